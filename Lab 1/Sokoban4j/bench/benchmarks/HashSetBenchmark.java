@@ -0,0 +1,104 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import agents.search.LongHashSet;
+import agents.search.LongIntHashMap;
+
+/**
+ * Visited-set and best-g map operations on random 64-bit keys (like Zobrist hashes), per key.
+ * <br/>
+ * Inserts start from a table presized for all keys, as the engines do; lookups hit and miss half of the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class HashSetBenchmark {
+    private static final int KEYS = 1 << 20;
+
+    // Keys to insert followed by as many absent keys
+    private static long[] keys() {
+        Random rand = new Random(42);
+        long[] keys = new long[2 * KEYS];
+        for (int i = 0; i < keys.length; i++) keys[i] = rand.nextLong();
+        return keys;
+    }
+
+    @State(Scope.Benchmark)
+    public static class SetState {
+        @Param({"false", "true"})
+        public boolean offHeap;
+
+        long[] keys;
+        LongHashSet filled;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            keys = keys();
+            filled = new LongHashSet(KEYS, offHeap);
+            for (int i = 0; i < KEYS; i++) filled.add(keys[i]);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MapState {
+        long[] keys;
+        LongIntHashMap filled;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            keys = keys();
+            filled = new LongIntHashMap(KEYS);
+            for (int i = 0; i < KEYS; i++) filled.put(keys[i], i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public LongHashSet setAdd(SetState s) {
+        LongHashSet set = new LongHashSet(KEYS, s.offHeap);
+        for (int i = 0; i < KEYS; i++) set.add(s.keys[i]);
+        return set;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public int setContains(SetState s) {
+        int found = 0;
+        for (int i = KEYS / 2; i < KEYS + KEYS / 2; i++) if (s.filled.contains(s.keys[i])) found++;
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public LongIntHashMap mapPut(MapState s) {
+        LongIntHashMap map = new LongIntHashMap(KEYS);
+        for (int i = 0; i < KEYS; i++) map.put(s.keys[i], i);
+        return map;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public long mapGet(MapState s) {
+        long sum = 0;
+        for (int i = KEYS / 2; i < KEYS + KEYS / 2; i++) sum += s.filled.get(s.keys[i], -1);
+        return sum;
+    }
+}
@@ -0,0 +1,119 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import agents.search.BitBoard;
+import game.actions.EDirection;
+
+/**
+ * Per-state hot paths of the A* inner loop, measured over the states along the solution of a pinned level.
+ * <br/>
+ * Each invocation walks all recorded states (or pushes), so scores are per level; divide by the state count printed
+ * at setup for a per-state figure. Freeze checks use fresh hashes so every call computes instead of hitting the cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class HotPathBenchmark {
+    private static final EDirection[] DIRS = {EDirection.UP, EDirection.RIGHT, EDirection.DOWN, EDirection.LEFT};
+
+    @Param({"Aymeric_Medium.sok:6", "Aymeric_Hard.sok:10"})
+    public String level;
+
+    private short[][] boxes;
+    private int[] players;
+    // State index after each push and the square the box went to
+    private int[][] pushes;
+    private int height;
+    private boolean[][] walls;
+    private long[][][] zobrist;
+    private Object detector, matcher;
+    private BitBoard occupied;
+    private short[] scratch;
+    private long salt;
+
+    @Setup(Level.Trial)
+    public void load() throws Throwable {
+        Solver.SolvedLevel solved = new Solver.SolvedLevel(level);
+        boxes = solved.boxes.toArray(new short[0][]);
+        players = solved.players.stream().mapToInt(Integer::intValue).toArray();
+        pushes = solved.pushes.toArray(new int[0][]);
+        height = solved.height();
+        walls = Solver.walls();
+        zobrist = Solver.zobrist();
+        detector = Solver.detector(solved.agent);
+        matcher = Solver.newMatcher(solved.board.boxCount, height);
+        occupied = new BitBoard(solved.width() * height);
+        scratch = new short[solved.board.boxCount];
+        System.out.printf("%n%s: %d states, %d pushes%n", level, boxes.length, pushes.length);
+    }
+
+    // Children of every state as generated by MyAgent.a_star(): walls, occupancy, dead squares, hash updates and the
+    // copied box array of each push
+    @Benchmark
+    public long successors() throws Throwable {
+        long sum = 0;
+        for (int s = 0; s < boxes.length; s++) {
+            short[] curr = boxes[s];
+            Solver.OCCUPY.invoke(curr, occupied);
+            int playerX = players[s] & 0xFF, playerY = players[s] >> 8;
+            for (EDirection dir : DIRS) {
+                int nextX = playerX + dir.dX, nextY = playerY + dir.dY;
+                if (walls[nextX][nextY]) continue;
+                if (!occupied.get(nextX * height + nextY)) {
+                    sum += zobrist[1][nextX][nextY];
+                    continue;
+                }
+                int nextXX = nextX + dir.dX, nextYY = nextY + dir.dY;
+                if (walls[nextXX][nextYY] || occupied.get(nextXX * height + nextYY)) continue;
+                if ((boolean) Solver.DETECT_SIMPLE.invoke(detector, nextXX, nextYY)) continue;
+                sum += zobrist[0][nextX][nextY] ^ zobrist[0][nextXX][nextYY] ^ zobrist[1][nextX][nextY];
+                System.arraycopy(curr, 0, scratch, 0, curr.length);
+                sum += (int) Solver.MOVE_BOX.invoke(scratch, nextX, nextY, nextXX, nextYY);
+            }
+        }
+        return sum;
+    }
+
+    // DeadSquareDetector.detectFreeze after every push of the solution
+    @Benchmark
+    public int detectFreeze() throws Throwable {
+        int frozen = 0;
+        for (int[] push : pushes) {
+            Solver.OCCUPY.invoke(boxes[push[0]], occupied);
+            if ((boolean) Solver.DETECT_FREEZE.invoke(detector, occupied, push[1], push[2], ++salt)) frozen++;
+        }
+        return frozen;
+    }
+
+    @Benchmark
+    public int heuristicClosest() throws Throwable {
+        int sum = 0;
+        for (short[] b : boxes) sum += (int) Solver.HEURISTIC.invoke(b);
+        return sum;
+    }
+
+    // Full matching solves, no incremental updates
+    @Benchmark
+    public int heuristicMatching() throws Throwable {
+        int sum = 0;
+        for (short[] b : boxes) sum += (int) Solver.MATCHER_SOLVE.invoke(matcher, b);
+        return sum;
+    }
+}
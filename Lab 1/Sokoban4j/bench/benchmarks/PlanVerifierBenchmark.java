@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.PlanVerifier;
+import game.actions.EDirection;
+import game.actions.compact.CAction;
+import game.actions.compact.CMove;
+import game.actions.compact.CPush;
+import game.actions.oop.IAction;
+import game.actions.oop.Move;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+
+/**
+ * Checking a solution of a pinned level, per plan: the flat PlanVerifier, against replaying it on a BoardCompact with
+ * compact actions and playing it the way SokobanSim does (OOP board, Move.orPush and a BoardCompact per step).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class PlanVerifierBenchmark {
+    @Param({"Aymeric_Medium.sok:6", "Aymeric_Hard.sok:10"})
+    public String level;
+
+    private Board board;
+    private BoardCompact compact;
+    private List<EDirection> plan;
+    private PlanVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void load() throws Throwable {
+        Solver.SolvedLevel solved = new Solver.SolvedLevel(level);
+        int colon = level.lastIndexOf(':');
+        board = Board.fromFileSok(new File(Solver.LEVELS, level.substring(0, colon)),
+                Integer.parseInt(level.substring(colon + 1)));
+        compact = solved.board;
+        plan = solved.plan;
+        verifier = new PlanVerifier(compact);
+        if (!verifier.solves(plan)) throw new IllegalStateException("Plan does not solve " + level);
+        System.out.printf("%n%s: %d steps%n", level, plan.size());
+    }
+
+    // Level flattened once, as when checking many plans
+    @Benchmark
+    public PlanVerifier.Result verifier() {
+        return verifier.verify(plan);
+    }
+
+    // Flattening included, as for a single plan
+    @Benchmark
+    public PlanVerifier.Result verifierFresh() {
+        return PlanVerifier.verify(compact, plan);
+    }
+
+    @Benchmark
+    public boolean compactReplay() {
+        BoardCompact state = compact.clone();
+        for (EDirection dir : plan) {
+            CAction action = CPush.getAction(dir);
+            if (!action.isPossible(state)) action = CMove.getAction(dir);
+            if (!action.isPossible(state)) return false;
+            action.perform(state);
+        }
+        return state.isVictory();
+    }
+
+    @Benchmark
+    public boolean simReplay() {
+        Board state = board.clone();
+        BoardCompact observed = null;
+        for (EDirection dir : plan) {
+            observed = state.makeBoardCompact();
+            IAction action = Move.orPush(state, dir);
+            if (!action.isPossible(state)) return false;
+            action.perform(state);
+        }
+        return state.isVictory() && observed != null;
+    }
+}
@@ -0,0 +1,153 @@
+package benchmarks;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import agents.search.BitBoard;
+import game.IAgent;
+import game.actions.EDirection;
+import game.actions.compact.CAction;
+import game.actions.compact.CMove;
+import game.actions.compact.CPush;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+import game.board.slim.BoardSlim;
+
+/**
+ * Access to MyAgent and its helpers for the benchmarks.
+ * <br/>
+ * The solver lives in the default package, which named packages cannot import, so everything goes through method
+ * handles resolved once; static final handles are constants to the JIT and add no per-call reflection cost.
+ */
+final class Solver {
+    // Directory of the .sok files, overridable with -Dbench.levels=<path>
+    static final String LEVELS = System.getProperty("bench.levels", "levels");
+
+    static final Class<?> AGENT, DETECTOR, MATCHER;
+    static final MethodHandle NEW_AGENT, THINK, HEURISTIC, OCCUPY, MOVE_BOX, PACK_BOXES, DETECT_SIMPLE, DETECT_FREEZE,
+            NEW_MATCHER, MATCHER_SOLVE;
+    private static final Field WALLS, ZOBRIST, GOAL_DISTS, DSD;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            AGENT = Class.forName("MyAgent");
+            DETECTOR = Class.forName("MyAgent$DeadSquareDetector");
+            MATCHER = Class.forName("MatchingHeuristic");
+            NEW_AGENT = lookup.unreflectConstructor(AGENT.getConstructor());
+            THINK = lookup.unreflect(accessible(AGENT.getDeclaredMethod("think", BoardCompact.class)));
+            HEURISTIC = lookup.unreflect(accessible(AGENT.getDeclaredMethod("heuristic", short[].class)));
+            OCCUPY = lookup.unreflect(accessible(AGENT.getDeclaredMethod("occupy", short[].class, BitBoard.class)));
+            MOVE_BOX = lookup.unreflect(accessible(AGENT.getDeclaredMethod("moveBox", short[].class, int.class,
+                    int.class, int.class, int.class)));
+            PACK_BOXES = lookup.unreflect(accessible(AGENT.getDeclaredMethod("packBoxes", BoardSlim.class)));
+            DETECT_SIMPLE = lookup.unreflect(accessible(DETECTOR.getDeclaredMethod("detectSimple", int.class,
+                    int.class)));
+            DETECT_FREEZE = lookup.unreflect(accessible(DETECTOR.getDeclaredMethod("detectFreeze", BitBoard.class,
+                    int.class, int.class, long.class)));
+            NEW_MATCHER = lookup.unreflectConstructor(accessible(MATCHER.getDeclaredConstructor(int[][].class,
+                    int.class, int.class)));
+            MATCHER_SOLVE = lookup.unreflect(accessible(MATCHER.getDeclaredMethod("solve", short[].class)));
+            WALLS = accessible(AGENT.getDeclaredField("walls"));
+            ZOBRIST = accessible(AGENT.getDeclaredField("zobrist_hashes"));
+            GOAL_DISTS = accessible(AGENT.getDeclaredField("goalDists"));
+            DSD = accessible(AGENT.getDeclaredField("dsd"));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Solver() {
+    }
+
+    /**
+     * A level solved once, so the solver's static tables describe it, with the states along the solution.
+     */
+    static final class SolvedLevel {
+        final BoardCompact board;
+        final Object agent;
+        final List<EDirection> plan;
+        // Boxes (packed as x | y << 8) and player (same packing) after every step of the plan
+        final List<short[]> boxes = new ArrayList<>();
+        final List<Integer> players = new ArrayList<>();
+        // Pushes of the plan: index of the state after the push and the square the box went to
+        final List<int[]> pushes = new ArrayList<>();
+
+        SolvedLevel(String spec) throws Throwable {
+            board = load(spec);
+            agent = newAgent();
+            plan = think(agent, board.clone());
+            if (plan == null) throw new IllegalStateException("No solution for " + spec);
+            BoardCompact replay = board.clone();
+            record(replay);
+            for (EDirection dir : plan) {
+                CAction action = CMove.getAction(dir);
+                boolean push = !action.isPossible(replay);
+                if (push) action = CPush.getAction(dir);
+                action.perform(replay);
+                record(replay);
+                if (push) pushes.add(new int[]{boxes.size() - 1, replay.playerX + dir.dX, replay.playerY + dir.dY});
+            }
+        }
+
+        private void record(BoardCompact b) throws Throwable {
+            boxes.add((short[]) PACK_BOXES.invoke(b.makeBoardSlim()));
+            players.add((b.playerX & 0xFF) | (b.playerY & 0xFF) << 8);
+        }
+
+        int width() {
+            return board.width();
+        }
+
+        int height() {
+            return board.height();
+        }
+    }
+
+    /**
+     * Loads a level given as "file:level", e.g. "Aymeric_Hard.sok:1".
+     */
+    static BoardCompact load(String spec) {
+        int colon = spec.lastIndexOf(':');
+        return Board.fromFileSok(new File(LEVELS, spec.substring(0, colon)),
+                Integer.parseInt(spec.substring(colon + 1))).makeBoardCompact();
+    }
+
+    static Object newAgent() throws Throwable {
+        Object agent = NEW_AGENT.invoke();
+        ((IAgent) agent).init(true, false);
+        return agent;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<EDirection> think(Object agent, BoardCompact board) throws Throwable {
+        return (List<EDirection>) THINK.invoke(agent, board);
+    }
+
+    static boolean[][] walls() throws IllegalAccessException {
+        return (boolean[][]) WALLS.get(null);
+    }
+
+    static long[][][] zobrist() throws IllegalAccessException {
+        return (long[][][]) ZOBRIST.get(null);
+    }
+
+    static Object detector(Object agent) throws IllegalAccessException {
+        return DSD.get(agent);
+    }
+
+    // Matching heuristic of the level solved last
+    static Object newMatcher(int boxCount, int height) throws Throwable {
+        return NEW_MATCHER.invoke((int[][]) GOAL_DISTS.get(null), boxCount, height);
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+}
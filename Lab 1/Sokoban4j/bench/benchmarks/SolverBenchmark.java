@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+
+/**
+ * Full MyAgent.think() (preprocessing plus move-optimal A*) on a pinned set of levels.
+ * <br/>
+ * The levels are fixed so nightly runs stay comparable; a change to the set is a break in the series.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SolverBenchmark {
+    @Param({"easy.sok:10", "Aymeric_Medium.sok:6", "Aymeric_Hard.sok:1", "Aymeric_Hard.sok:10"})
+    public String level;
+
+    private BoardCompact board;
+    private Object agent;
+
+    @Setup(Level.Trial)
+    public void load() throws Throwable {
+        board = Solver.load(level);
+        agent = Solver.newAgent();
+    }
+
+    @Benchmark
+    public List<EDirection> think() throws Throwable {
+        return Solver.think(agent, board.clone());
+    }
+}
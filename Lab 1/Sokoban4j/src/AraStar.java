@@ -0,0 +1,243 @@
+import static java.lang.System.out;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import agents.search.BitBoard;
+import agents.search.BucketQueue;
+import agents.search.IntBinaryHeap;
+import agents.search.IntPriorityQueue;
+import agents.search.LongIntHashMap;
+import agents.search.NodeArena;
+import game.SearchMetrics;
+import game.actions.EDirection;
+
+// Anytime repairing A* (ARA*) over the same state space as MyAgent.a_star(), for when solutions need not be optimal.
+// The first pass is weighted A* (priority g + w * h), which finds a solution fast; every following pass lowers w and
+// keeps the best g of each state, the open list and the states improved after their expansion (INCONS), so effort
+// is reused instead of restarting. A pass ends once no open node can beat the incumbent, which is then at most w
+// times longer than optimal. The search stops when a pass with w = 1 proves the incumbent optimal, or once the time
+// budget counted from the first solution is spent, and at the agent's deadline in any case. Running out of the
+// agent's time without a solution, the path to the expanded state with the lowest heuristic is returned as a partial
+// plan, to be continued from by the next search.
+class AraStar {
+    // Fixed-point scale of weights (steps of 0.05), priorities are SCALE * g + weight * h
+    private static final int SCALE = 20;
+    // Expansions between budget checks
+    private static final int CHECK_INTERVAL = 1024;
+    // Low bits of a state entry holding the pass it was last expanded in, the rest is its best g
+    private static final int PASS_BITS = 8, PASS_MASK = (1 << PASS_BITS) - 1;
+
+    private final MyAgent agent;
+    private final int height;
+    private final long completedHash, budgetMillis;
+    // End of the improvement budget, set when the first solution is found
+    private long deadline = Long.MAX_VALUE;
+    private final MatchingHeuristic matcher;
+    private final NodeArena nodes;
+    private final SearchMetrics metrics;
+    // Heuristic of every node, indexed by node handle
+    private int[] hs = new int[1 << 16];
+    // Best g of every generated state and the pass in which it was last expanded, keyed by hashFull
+    private final LongIntHashMap states;
+    // Nodes improved after their expansion in the current pass
+    private int[] incons = new int[256];
+    private int inconsSize;
+    private IntPriorityQueue open;
+    private final double decay;
+    private int weight, pass, incumbent = Integer.MAX_VALUE, goal = NodeArena.NONE;
+    // Expanded node with the lowest heuristic (then g), the end of a partial plan
+    private int closest;
+
+    // 'weight' is the initial weight, whose excess over 1 shrinks by 'decay' per pass, 'budgetMillis' the time to keep
+    // improving the first solution once it is found
+    AraStar(MyAgent agent, double weight, double decay, long budgetMillis) {
+        this.agent = agent;
+        this.height = MyAgent.board.height();
+        this.completedHash = agent.completedHash();
+        this.budgetMillis = budgetMillis;
+        this.matcher = agent.newMatcher();
+        this.nodes = new NodeArena(MyAgent.board.boxCount);
+        this.metrics = agent.metrics();
+        this.states = new LongIntHashMap(agent.visitedExpected());
+        this.weight = Math.max(SCALE, (int) Math.round(weight * SCALE));
+        this.decay = decay;
+    }
+
+    List<EDirection> search() {
+        short[] boxes = MyAgent.packBoxes(MyAgent.board);
+        long heuristicStart = System.nanoTime();
+        int h = matcher != null ? matcher.solve(boxes) : MyAgent.heuristic(boxes);
+        metrics.heuristicNanos += System.nanoTime() - heuristicStart;
+        if (h >= MatchingHeuristic.UNREACHABLE) return null;
+        long hashBox = MyAgent.hashBoxes(boxes);
+        int start = add(NodeArena.NONE, 0, MyAgent.board.playerX, MyAgent.board.playerY, 0, h,
+                nodes.intern(boxes, hashBox));
+        states.put(hashBox ^ MyAgent.zobrist_hashes[1][MyAgent.board.playerX][MyAgent.board.playerY], 0);
+        closest = start;
+        open = newQueue();
+        open.add(start, weight * h);
+        while (true) {
+            pass++;
+            boolean exhausted = improve();
+            if (agent.verbose())
+                out.printf("ARA*: weight %.1f pass done, incumbent %s, %d nodes\n", weight / (double) SCALE,
+                        incumbent == Integer.MAX_VALUE ? "none" : incumbent + " moves", agent.searchedNodes);
+            // Proven optimal, out of time with a solution at hand, or unsolvable (the open list ran dry)
+            if (weight == SCALE || !exhausted || goal == NodeArena.NONE || pass == PASS_MASK
+                    || System.currentTimeMillis() >= deadline || agent.cancelled()) break;
+            weight = SCALE + (int) ((weight - SCALE) * decay);
+            reorder();
+        }
+        metrics.visited(states.size(), states.loadFactor());
+        int end = goal;
+        if (end == NodeArena.NONE) {
+            // Best effort when only the agent's time ran out, not when the game stopped it
+            if (!agent.outOfTime() || Thread.currentThread().isInterrupted() || agent.deadline.isCancelled())
+                return null;
+            end = closest;
+            if (agent.verbose()) out.printf("ARA*: out of time, partial plan to h = %d\n", hs[end]);
+        }
+        List<EDirection> actions = new LinkedList<>();
+        for (int n = end; nodes.parent(n) != NodeArena.NONE; n = nodes.parent(n)) {
+            // Tunnel macros span several steps in one direction
+            EDirection dir = MyAgent.dirList[nodes.dir(n)];
+            for (int k = nodes.f(n) - nodes.f(nodes.parent(n)); k > 0; k--) actions.add(0, dir);
+        }
+        return actions;
+    }
+
+    // Expands until no open node can improve the incumbent; FALSE if the budget ran out first (with a solution)
+    private boolean improve() {
+        short[] currBoxes = new short[MyAgent.board.boxCount], nextBoxes = new short[MyAgent.board.boxCount];
+        BitBoard occupied = new BitBoard(MyAgent.board.width() * height);
+        int expansions = 0;
+        while (open.size() > 0) {
+            // Nothing left below the incumbent at the current weight
+            if (goal != NodeArena.NONE && open.minPriority() >= SCALE * incumbent) break;
+            if (goal != NodeArena.NONE && ++expansions % CHECK_INTERVAL == 0
+                    && System.currentTimeMillis() >= deadline) return false;
+            if (agent.cancelled()) return false;
+            metrics.open(open.size());
+            int curr = open.poll();
+            int playerX = nodes.player(curr) & 0xFF, playerY = nodes.player(curr) >> 8;
+            long currHashBox = nodes.hashBox(curr);
+            long currHashFull = currHashBox ^ MyAgent.zobrist_hashes[1][playerX][playerY];
+            int currG = nodes.f(curr);
+            // Stale entry of a state reached again more cheaply, or already expanded in this pass
+            int entry = states.get(currHashFull, -1);
+            if (entry >>> PASS_BITS != currG || (entry & PASS_MASK) == pass) continue;
+            states.put(currHashFull, currG << PASS_BITS | pass);
+            agent.searchedNodes++;
+            int currRef = nodes.boxRef(curr), currH = hs[curr];
+            if (currH < hs[closest] || currH == hs[closest] && currG < nodes.f(closest)) closest = curr;
+            boolean matcherLoaded = false;
+            nodes.boxes(currRef, currBoxes);
+            MyAgent.occupy(currBoxes, occupied);
+            for (int i = 0; i < 4; i++) {
+                EDirection dir = MyAgent.dirList[i];
+                int nextX = playerX + dir.dX, nextY = playerY + dir.dY;
+                if (MyAgent.walls[nextX][nextY]) continue;
+                long nextHashBox = currHashBox;
+                int nextH = currH, nextRef = currRef, nextG = currG + 1, endX = nextX, endY = nextY;
+                if (occupied.get(nextX * height + nextY)) {
+                    int nextXX = nextX + dir.dX, nextYY = nextY + dir.dY;
+                    if (MyAgent.walls[nextXX][nextYY] || occupied.get(nextXX * height + nextYY)) continue;
+                    if (agent.dsd.detectSimple(nextXX, nextYY)) continue;
+                    // Tunnel macro: the box goes on to the tunnel's end with the player behind it, as one edge
+                    if (agent.macros != null) {
+                        int more = agent.macros.tunnel(occupied, nextX * height + nextY, i);
+                        nextG += more;
+                        endX += more * dir.dX;
+                        endY += more * dir.dY;
+                        nextXX += more * dir.dX;
+                        nextYY += more * dir.dY;
+                    }
+                    nextHashBox ^= MyAgent.zobrist_hashes[0][nextX][nextY] ^ MyAgent.zobrist_hashes[0][nextXX][nextYY];
+                    if (nextG >= g(nextHashBox ^ MyAgent.zobrist_hashes[1][endX][endY])) {
+                        metrics.duplicates++;
+                        continue;
+                    }
+                    System.arraycopy(currBoxes, 0, nextBoxes, 0, currBoxes.length);
+                    int movedBox = MyAgent.moveBox(nextBoxes, nextX, nextY, nextXX, nextYY);
+                    occupied.move(nextX * height + nextY, nextXX * height + nextYY);
+                    boolean deadlock = agent.dsd.detectFreeze(occupied, nextXX, nextYY, nextHashBox)
+                            || agent.corralDetection
+                            && agent.dsd.detectCorral(nextBoxes, occupied, endX, endY, nextXX, nextYY);
+                    occupied.move(nextXX * height + nextYY, nextX * height + nextY);
+                    if (deadlock) continue;
+                    if (matcher == null)
+                        nextH = currH - MyAgent.minDists[nextX][nextY] + MyAgent.minDists[nextXX][nextYY];
+                    else {
+                        long heuristicStart = System.nanoTime();
+                        if (!matcherLoaded) {
+                            matcher.load(currHashBox, currBoxes);
+                            matcherLoaded = true;
+                        }
+                        nextH = matcher.moved(movedBox, nextXX, nextYY, nextHashBox);
+                        metrics.heuristicNanos += System.nanoTime() - heuristicStart;
+                        if (nextH >= MatchingHeuristic.UNREACHABLE) continue;
+                    }
+                    nextRef = nodes.intern(nextBoxes, nextHashBox);
+                }
+                long nextHashFull = nextHashBox ^ MyAgent.zobrist_hashes[1][endX][endY];
+                // Only improvements of g matter, and only if they can still beat the incumbent (h is admissible)
+                int known = states.get(nextHashFull, -1);
+                if (known >= 0 && nextG >= known >>> PASS_BITS) {
+                    metrics.duplicates++;
+                    continue;
+                }
+                if (nextG + nextH >= incumbent) continue;
+                // Keep the pass the state was expanded in, an improved closed state waits in INCONS
+                boolean closed = known >= 0 && (known & PASS_MASK) == pass;
+                states.put(nextHashFull, nextG << PASS_BITS | (closed ? pass : 0));
+                int next = add(curr, i, endX, endY, nextG, nextH, nextRef);
+                metrics.generated++;
+                if (nextHashBox == completedHash) {
+                    if (goal == NodeArena.NONE) deadline = System.currentTimeMillis() + budgetMillis;
+                    incumbent = nextG;
+                    goal = next;
+                } else if (closed) {
+                    if (inconsSize == incons.length) incons = Arrays.copyOf(incons, inconsSize * 2);
+                    incons[inconsSize++] = next;
+                } else open.add(next, SCALE * nextG + weight * nextH);
+            }
+        }
+        return true;
+    }
+
+    // Moves INCONS into the open list and recomputes all priorities with the current weight
+    private void reorder() {
+        IntPriorityQueue q = newQueue();
+        while (open.size() > 0) add(q, open.poll());
+        for (int i = 0; i < inconsSize; i++) add(q, incons[i]);
+        inconsSize = 0;
+        open = q;
+    }
+
+    // Re-queues 'n' unless it is stale or cannot beat the incumbent
+    private void add(IntPriorityQueue q, int n) {
+        int g = nodes.f(n), player = nodes.player(n);
+        long hashFull = nodes.hashBox(n) ^ MyAgent.zobrist_hashes[1][player & 0xFF][player >> 8];
+        if (g(hashFull) == g && g + hs[n] < incumbent) q.add(n, SCALE * g + weight * hs[n]);
+    }
+
+    // Best known g of a state, MAX_VALUE if it was never generated
+    private int g(long hashFull) {
+        int entry = states.get(hashFull, -1);
+        return entry < 0 ? Integer.MAX_VALUE : entry >>> PASS_BITS;
+    }
+
+    // Node with g stored in the arena's f column and h on the side
+    private int add(int parent, int dir, int x, int y, int g, int h, int boxRef) {
+        int n = nodes.add(parent, dir, (x & 0xFF) | (y & 0xFF) << 8, g, boxRef);
+        if (n == hs.length) hs = Arrays.copyOf(hs, n + (n >> 1));
+        hs[n] = h;
+        return n;
+    }
+
+    private IntPriorityQueue newQueue() {
+        return agent.openList == MyAgent.OpenList.BUCKET ? new BucketQueue() : new IntBinaryHeap();
+    }
+}
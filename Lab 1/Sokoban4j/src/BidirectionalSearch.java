@@ -0,0 +1,183 @@
+import static java.lang.System.out;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import agents.search.LongIntHashMap;
+import agents.search.NodeArena;
+import game.SearchMetrics;
+import game.actions.EDirection;
+
+// Bidirectional breadth-first search over pushes: a forward push search from the initial position meets a backward
+// pull search from the solved configuration, which starts once for every region the player may end up in.
+// States are the same as in PushSearch (box configuration plus normalized player region), so both frontiers are
+// matched on hashBox ^ region hash. The side with the smaller layer is expanded one full layer at a time and the best
+// meeting of that layer is taken, which keeps solutions push-optimal; on long corridors each side only needs about
+// half the depth. Deadlock checks prune the forward side only, every pulled state can reach the goal by construction.
+class BidirectionalSearch extends PushSearch {
+    private static final int NONE = NodeArena.NONE;
+
+    private final NodeArena[] nodes = new NodeArena[2];
+    // Normalized state hash -> node handle, per side
+    private final LongIntHashMap[] seen = new LongIntHashMap[2];
+    private final int[][] layer = new int[2][];
+    private final int[] layerSize = new int[2];
+    // Best meeting found in the current layer: forward node, backward node and total pushes
+    private int meetForward = NONE, meetBackward = NONE, meetPushes = Integer.MAX_VALUE;
+
+    BidirectionalSearch(MyAgent agent) {
+        super(agent);
+    }
+
+    @Override
+    List<EDirection> search() {
+        // Pulls start from the goals, which need one box each
+        if (MyAgent.board.boxCount != agent.goals.size()) return super.search();
+        int boxCount = MyAgent.board.boxCount;
+        for (int side = 0; side < 2; side++) {
+            nodes[side] = new NodeArena(boxCount);
+            seen[side] = new LongIntHashMap(1 << 16);
+            layer[side] = new int[16];
+        }
+        // Forward root: the initial position
+        short[] boxes = MyAgent.packBoxes(MyAgent.board);
+        long hashBox = MyAgent.hashBoxes(boxes);
+        int player = MyAgent.board.playerX * height + MyAgent.board.playerY;
+        markBoxes(boxes);
+        addRoot(0, boxes, hashBox, player);
+        // Backward roots: boxes on the goals, player in each region of the squares the player can ever walk on
+        short[] goalBoxes = new short[boxCount];
+        for (int i = 0; i < boxCount; i++) {
+            MyAgent.Point g = agent.goals.get(i);
+            goalBoxes[i] = (short) ((g.x & 0xFF) | (g.y & 0xFF) << 8);
+        }
+        long goalHash = MyAgent.hashBoxes(goalBoxes);
+        occupied.clear();
+        int walkable = flood(player);
+        int[] squares = Arrays.copyOf(queue, walkable);
+        boolean[] covered = new boolean[width * height];
+        markBoxes(goalBoxes);
+        for (int p : squares) {
+            if (covered[p] || occupied.get(p)) continue;
+            addRoot(1, goalBoxes, goalHash, p);
+            int count = flood(p);
+            for (int i = 0; i < count; i++) covered[queue[i]] = true;
+        }
+        // The initial position may already be solved
+        long startKey = hashBox ^ regionHash(player, boxes);
+        if (seen[1].containsKey(startKey)) return unroll(0, seen[1].get(startKey, NONE));
+        short[] currBoxes = new short[boxCount], nextBoxes = new short[boxCount];
+        while (layerSize[0] > 0 && layerSize[1] > 0) {
+            int side = layerSize[0] <= layerSize[1] ? 0 : 1;
+            expand(side, currBoxes, nextBoxes);
+            if (meetPushes != Integer.MAX_VALUE || agent.cancelled()) break;
+        }
+        agent.metrics().visited(seen[0].size() + seen[1].size(),
+                (seen[0].loadFactor() + seen[1].loadFactor()) / 2);
+        if (agent.verbose())
+            out.printf("Bidirectional search: %d forward pushes, %d backward pulls\n",
+                    nodes[0].size(), nodes[1].size());
+        if (meetPushes == Integer.MAX_VALUE) return null;
+        return unroll(meetForward, meetBackward);
+    }
+
+    // Adds a root of 'side' with the player region of 'player' in the marked configuration 'boxes'
+    private void addRoot(int side, short[] boxes, long hashBox, int player) {
+        int n = nodes[side].add(NONE, 0, packed(player), 0, nodes[side].intern(boxes, hashBox));
+        seen[side].put(hashBox ^ regionHash(player), n);
+        layer[side][layerSize[side]++] = n;
+    }
+
+    // Expands the whole current layer of 'side', replacing it by the next one and recording the best meeting
+    private void expand(int side, short[] currBoxes, short[] nextBoxes) {
+        NodeArena arena = nodes[side];
+        SearchMetrics metrics = agent.metrics();
+        int[] curr = Arrays.copyOf(layer[side], layerSize[side]);
+        layerSize[side] = 0;
+        for (int n : curr) {
+            if (agent.cancelled()) return;
+            agent.searchedNodes++;
+            long currHashBox = arena.hashBox(n);
+            arena.boxes(arena.boxRef(n), currBoxes);
+            markBoxes(currBoxes);
+            int reachable = flood(seed(side, n));
+            int[] region = Arrays.copyOf(queue, reachable);
+            for (int p : region)
+                for (int i = 0; i < 4; i++) {
+                    // Forward: push the box at p + step from p; backward: pull the box at p + step back to p
+                    int box = p + step[i], target = side == 0 ? box + step[i] : p - step[i];
+                    if (!occupied.get(box) || wall[target] || occupied.get(target)) continue;
+                    int from = box, to = side == 0 ? target : p;
+                    int fx = from / height, fy = from % height, tx = to / height, ty = to % height;
+                    if (side == 0 && agent.dsd.detectSimple(tx, ty)) continue;
+                    long nextHashBox = currHashBox ^ MyAgent.zobrist_hashes[0][fx][fy]
+                            ^ MyAgent.zobrist_hashes[0][tx][ty];
+                    System.arraycopy(currBoxes, 0, nextBoxes, 0, currBoxes.length);
+                    MyAgent.moveBox(nextBoxes, fx, fy, tx, ty);
+                    // The player ends on the square the box left, or behind a pulled box
+                    int player = side == 0 ? box : target;
+                    occupied.move(from, to);
+                    long nextKey = nextHashBox ^ regionHash(player);
+                    boolean skip = seen[side].containsKey(nextKey) || side == 0
+                            && (agent.dsd.detectFreeze(occupied, tx, ty, nextHashBox) || agent.corralDetection
+                            && agent.dsd.detectCorral(nextBoxes, occupied, fx, fy, tx, ty));
+                    occupied.move(to, from);
+                    if (skip) {
+                        if (seen[side].containsKey(nextKey)) metrics.duplicates++;
+                        continue;
+                    }
+                    metrics.generated++;
+                    // Backward nodes store the forward push they undo: direction and the square it leaves the player on
+                    int child = arena.add(n, i, packed(side == 0 ? box : p), arena.f(n) + 1,
+                            arena.intern(nextBoxes, nextHashBox));
+                    seen[side].put(nextKey, child);
+                    if (layerSize[side] == layer[side].length)
+                        layer[side] = Arrays.copyOf(layer[side], layerSize[side] * 2);
+                    layer[side][layerSize[side]++] = child;
+                    metrics.open(layerSize[0] + layerSize[1]);
+                    int other = seen[1 - side].get(nextKey, NONE);
+                    if (other == NONE) continue;
+                    int pushes = arena.f(child) + nodes[1 - side].f(other);
+                    if (pushes < meetPushes) {
+                        meetPushes = pushes;
+                        meetForward = side == 0 ? child : other;
+                        meetBackward = side == 0 ? other : child;
+                    }
+                }
+        }
+    }
+
+    // Square inside the player region of node 'n'
+    private int seed(int side, int n) {
+        int at = unpacked(nodes[side].player(n));
+        if (side == 0 || nodes[side].parent(n) == NONE) return at;
+        return at - step[nodes[side].dir(n)];
+    }
+
+    // Flood and hash of the region of 'player' with 'boxes' marked
+    private long regionHash(int player, short[] boxes) {
+        markBoxes(boxes);
+        return regionHash(player);
+    }
+
+    // Chains the forward pushes up to 'forward' with the pushes undone by the backward path from 'backward'
+    private List<EDirection> unroll(int forward, int backward) {
+        NodeArena fw = nodes[0], bw = nodes[1];
+        List<Integer> path = new ArrayList<>();
+        for (int n = forward; fw.parent(n) != NONE; n = fw.parent(n)) path.add(n);
+        List<EDirection> actions = new ArrayList<>();
+        short[] boxes = new short[MyAgent.board.boxCount];
+        int player = MyAgent.board.playerX * height + MyAgent.board.playerY;
+        for (int k = path.size() - 1; k >= 0; k--) {
+            int n = path.get(k);
+            fw.boxes(fw.boxRef(fw.parent(n)), boxes);
+            player = appendPush(boxes, player, unpacked(fw.player(n)), fw.dir(n), actions);
+        }
+        for (int n = backward; bw.parent(n) != NONE; n = bw.parent(n)) {
+            bw.boxes(bw.boxRef(n), boxes);
+            player = appendPush(boxes, player, unpacked(bw.player(n)), bw.dir(n), actions);
+        }
+        return actions;
+    }
+}
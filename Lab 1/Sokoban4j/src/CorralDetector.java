@@ -0,0 +1,238 @@
+import java.util.Arrays;
+
+import agents.search.BitBoard;
+import agents.search.LongHashSet;
+import agents.search.VerdictCache;
+import game.board.slim.STile;
+
+// PI-corral deadlock detection.
+// A corral is an area next to the last pushed box that the player cannot reach, together with the boxes fencing it.
+// It is checked only when it is a PI-corral: no box of it can be pushed out of it (I) and boxes bordering the player's
+// side can only be pushed further in from there (P), so the next pushes into it are forced. The check is a small push
+// search over the corral boxes alone, all other boxes removed; removing boxes only makes the level easier, so if no
+// push sequence gets those boxes onto goals, the full state is a deadlock. The sub-search gives up (no deadlock) as
+// soon as a box leaves the corral or the node limit is hit. Not thread-safe, one instance per DeadSquareDetector.
+class CorralDetector {
+    // Sub-search states explored before giving up
+    private static final int NODE_LIMIT = 1000;
+    // Largest corral (free squares) looked at, bigger areas are rarely PI-corrals and too costly to flood per push
+    private static final int CORRAL_LIMIT = 128;
+
+    private final int height;
+    private final boolean[] wall, dead, goal;
+    // Index offsets per direction, in EDirection index order (index = x * height + y)
+    private final int[] step = new int[4];
+    // Offsets of the 8 neighbours, clockwise from UP (even entries are the sides in EDirection order)
+    private final int[] ring = new int[8];
+    private final boolean[] ringFree = new boolean[8], ringLinked = new boolean[8];
+    // Stamped scratch grids: a cell is set iff its stamp equals the current one
+    private final int[] boxStamp, reachStamp, corralStamp, queue;
+    private int boxGen, reachGen, corralGen;
+    // Boxes of the current corral
+    private short[] sub;
+    // Sub-search stack of box sets and player squares
+    private short[][] stack = new short[64][];
+    private int[] players = new int[64];
+    // Statistics
+    long checks, searches, deadlocks;
+
+    CorralDetector(boolean[][] dead) {
+        int width = MyAgent.board.width();
+        height = MyAgent.board.height();
+        int n = width * height;
+        wall = new boolean[n];
+        this.dead = new boolean[n];
+        goal = new boolean[n];
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++) {
+                wall[x * height + y] = MyAgent.walls[x][y];
+                this.dead[x * height + y] = dead[x][y];
+                goal[x * height + y] = (MyAgent.board.tiles[x][y] & STile.PLACE_FLAG) != 0;
+            }
+        for (int i = 0; i < 4; i++) step[i] = MyAgent.dirList[i].dX * height + MyAgent.dirList[i].dY;
+        for (int i = 0; i < 4; i++) {
+            ring[2 * i] = step[i];
+            ring[2 * i + 1] = step[i] + step[(i + 1) & 3];
+        }
+        boxStamp = new int[n];
+        reachStamp = new int[n];
+        corralStamp = new int[n];
+        queue = new int[n];
+    }
+
+    // TRUE if a corral next to the box just pushed to [x, y] (player at [playerX, playerY]) is deadlocked.
+    // Verdicts are cached by the hash of the corral boxes and their normalized player region ('cache' may be null).
+    boolean deadlocked(short[] boxes, BitBoard occupied, int playerX, int playerY, int x, int y, VerdictCache cache) {
+        int player = playerX * height + playerY, pushed = x * height + y;
+        if (!splitsRing(occupied, pushed, player)) return false;
+        checks++;
+        markBoxes(boxes, boxes.length);
+        corralGen++;
+        for (int i = 0; i < 4; i++) {
+            // Sides already flooded belong to a corral checked before or to the player's region
+            if (!ringFree[2 * i] || ringLinked[2 * i] || corralStamp[pushed + step[i]] == corralGen) continue;
+            int count = corral(pushed + step[i], player, boxes);
+            if (count <= 0) continue;
+            short[] corralBoxes = Arrays.copyOf(sub, count);
+            if (!allOnGoals(corralBoxes) && isPI(corralBoxes) && deadlocked(corralBoxes, player, cache)) return true;
+            markBoxes(boxes, boxes.length);
+        }
+        return false;
+    }
+
+    private boolean deadlocked(short[] corralBoxes, int player, VerdictCache cache) {
+        markBoxes(corralBoxes, corralBoxes.length);
+        long key = MyAgent.hashBoxes(corralBoxes) ^ regionKey(player);
+        int c = cache == null ? VerdictCache.MISS : cache.get(key);
+        if (c != VerdictCache.MISS) return c == 1;
+        boolean res = search(corralBoxes, player, key);
+        if (res) deadlocks++;
+        if (cache != null) cache.put(key, res);
+        return res;
+    }
+
+    // Flood fills the free squares from 'from' and stamps them plus the boxes around them as the corral; the boxes
+    // are collected in 'sub'. Returns their count, or -1 if the player is reached or the area exceeds the limit.
+    private int corral(int from, int player, short[] boxes) {
+        corralGen++;
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        corralStamp[from] = corralGen;
+        while (head < tail) {
+            int p = queue[head++];
+            for (int i = 0; i < 4; i++) {
+                int next = p + step[i];
+                if (wall[next] || boxStamp[next] == boxGen || corralStamp[next] == corralGen) continue;
+                if (next == player || tail == CORRAL_LIMIT) return -1;
+                corralStamp[next] = corralGen;
+                queue[tail++] = next;
+            }
+        }
+        if (sub == null || sub.length < boxes.length) sub = new short[boxes.length];
+        int count = 0;
+        for (int k = 0; k < tail; k++)
+            for (int i = 0; i < 4; i++) {
+                int b = queue[k] + step[i];
+                if (boxStamp[b] != boxGen || corralStamp[b] == corralGen) continue;
+                corralStamp[b] = corralGen;
+                sub[count++] = (short) ((b / height & 0xFF) | (b % height & 0xFF) << 8);
+            }
+        return count;
+    }
+
+    // Cheap gate: TRUE if a free side of the pushed box is cut off from the player along the ring of 8 neighbours,
+    // i.e. the push may have closed a corral. Squares connected around the ring are certainly still reachable.
+    private boolean splitsRing(BitBoard occupied, int pushed, int player) {
+        for (int k = 0; k < 8; k++) ringFree[k] = !wall[pushed + ring[k]] && !occupied.get(pushed + ring[k]);
+        int start = 0;
+        while (pushed + ring[start] != player) start += 2;
+        Arrays.fill(ringLinked, false);
+        for (int k = start; ringFree[k & 7] && !ringLinked[k & 7]; k++) ringLinked[k & 7] = true;
+        for (int k = start + 7; ringFree[k & 7] && !ringLinked[k & 7]; k--) ringLinked[k & 7] = true;
+        for (int k = 0; k < 8; k += 2) if (ringFree[k] && !ringLinked[k]) return true;
+        return false;
+    }
+
+    // I: no corral box can be pushed out of the corral from outside; P: pushes of boxes bordering the outside further
+    // into the corral all start outside
+    private boolean isPI(short[] corralBoxes) {
+        for (short cb : corralBoxes) {
+            int b = cell(cb);
+            boolean border = false;
+            for (int i = 0; i < 4; i++) border |= isOutside(b + step[i]);
+            for (int i = 0; i < 4; i++) {
+                int from = b - step[i], to = b + step[i];
+                if (wall[from] || boxStamp[from] == boxGen || wall[to] || boxStamp[to] == boxGen || dead[to])
+                    continue;
+                boolean outside = corralStamp[from] != corralGen, inward = corralStamp[to] == corralGen;
+                if (outside && !inward || !outside && inward && border) return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isOutside(int c) {
+        return !wall[c] && boxStamp[c] != boxGen && corralStamp[c] != corralGen;
+    }
+
+    // Depth-first push search over the corral boxes only; TRUE iff it is exhausted without success
+    private boolean search(short[] start, int player, long startKey) {
+        searches++;
+        LongHashSet seen = new LongHashSet(NODE_LIMIT, false);
+        seen.add(startKey);
+        int n = start.length, size = 0, expanded = 0;
+        stack[size] = start;
+        players[size++] = player;
+        while (size > 0) {
+            if (++expanded > NODE_LIMIT) return false;
+            short[] boxes = stack[--size];
+            markBoxes(boxes, n);
+            int reachable = flood(players[size]);
+            int[] region = Arrays.copyOf(queue, reachable);
+            for (int from : region)
+                for (int i = 0; i < 4; i++) {
+                    int b = from + step[i], to = b + step[i];
+                    if (boxStamp[b] != boxGen || wall[to] || boxStamp[to] == boxGen) continue;
+                    // Leaving the corral dissolves it, out of scope
+                    if (corralStamp[to] != corralGen) return false;
+                    if (dead[to]) continue;
+                    short[] next = boxes.clone();
+                    MyAgent.moveBox(next, b / height, b % height, to / height, to % height);
+                    if (allOnGoals(next)) return false;
+                    // Normalize the child region with the box moved in the marks
+                    boxStamp[b] = 0;
+                    boxStamp[to] = boxGen;
+                    long key = MyAgent.hashBoxes(next) ^ regionKey(b);
+                    boxStamp[to] = 0;
+                    boxStamp[b] = boxGen;
+                    if (!seen.add(key)) continue;
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                        players = Arrays.copyOf(players, size * 2);
+                    }
+                    stack[size] = next;
+                    players[size++] = b;
+                }
+        }
+        return true;
+    }
+
+    private boolean allOnGoals(short[] boxes) {
+        for (short b : boxes) if (!goal[cell(b)]) return false;
+        return true;
+    }
+
+    // Player key of the region reachable from 'from', normalized to its smallest square
+    private long regionKey(int from) {
+        int count = flood(from), min = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) min = Math.min(min, queue[i]);
+        return MyAgent.zobrist_hashes[1][min / height][min % height];
+    }
+
+    // Flood fills the player region from 'from' around marked boxes; reachable squares end up in queue[0, count)
+    private int flood(int from) {
+        reachGen++;
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        reachStamp[from] = reachGen;
+        while (head < tail) {
+            int p = queue[head++];
+            for (int i = 0; i < 4; i++) {
+                int next = p + step[i];
+                if (wall[next] || boxStamp[next] == boxGen || reachStamp[next] == reachGen) continue;
+                reachStamp[next] = reachGen;
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+
+    private void markBoxes(short[] boxes, int count) {
+        boxGen++;
+        for (int i = 0; i < count; i++) boxStamp[cell(boxes[i])] = boxGen;
+    }
+
+    private int cell(short b) {
+        return (b & 0xFF) * height + ((b >> 8) & 0xFF);
+    }
+}
@@ -0,0 +1,339 @@
+import static java.lang.System.out;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import agents.search.BitBoard;
+import agents.search.RecordBuffer;
+import agents.search.RecordFile;
+import game.SearchMetrics;
+import game.actions.EDirection;
+
+// A* over the same state space as MyAgent.a_star() with delayed duplicate detection, keeping open and closed states in
+// files on disk so the search is limited by disk space rather than heap.
+// States are fixed-width records of 16-bit slots: player, boxes in ascending order and, in the low slot of the last
+// word, the action that generated them. They are bucketed by (g, h) and buckets are expanded in order of f, then g;
+// the closest-goal heuristic is consistent, so every state is first expanded with its optimal g. Children are
+// buffered in memory per bucket and spilled as sorted runs when the buffers exceed their budget. A bucket is finalized
+// by merging its runs, dropping duplicates within it and against every state expanded before with the same h (h
+// depends on the boxes only, so earlier copies of a state can only be there). Expanded states are kept per h as
+// sorted segment files, merged while a segment is at least half the size of the one before, so lookups see a
+// logarithmic number of segments. The plan is rebuilt backwards from the goal by undoing each record's action and
+// looking the parent up in the segments of its h.
+class ExternalSearch {
+    // Low slot of a record: 0 for the start, else 1 + (direction | pushed << 2)
+    private static final int TAG_BITS = 16;
+
+    private final MyAgent agent;
+    private final SearchMetrics metrics;
+    private final int height, boxCount, width;
+    private final Path dir;
+    private final int bufferRecords;
+    // Open buckets by f << 32 | g
+    private final TreeMap<Long, Bucket> open = new TreeMap<>();
+    // Expanded states by h, as sorted segments of decreasing size
+    private final Map<Integer, List<RecordFile>> closed = new HashMap<>();
+    // State being expanded and its children
+    private final short[] boxes, sorted;
+    private final BitBoard occupied;
+    private final long[] record, child;
+    private int buffered, files;
+    private long openRecords, closedRecords, bytesWritten;
+
+    ExternalSearch(MyAgent agent, String tempDir, int bufferRecords) {
+        this.agent = agent;
+        this.metrics = agent.metrics();
+        this.height = MyAgent.board.height();
+        this.boxCount = MyAgent.board.boxCount;
+        this.width = (boxCount + 2 + 3) / 4;
+        this.bufferRecords = bufferRecords;
+        this.boxes = new short[boxCount];
+        this.sorted = new short[boxCount];
+        this.occupied = new BitBoard(MyAgent.board.width() * height);
+        this.record = new long[width];
+        this.child = new long[width];
+        try {
+            this.dir = Files.createTempDirectory(Paths.get(tempDir), "sokoban-external");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    List<EDirection> search() {
+        try {
+            return run();
+        } finally {
+            cleanUp();
+        }
+    }
+
+    // Deletes the temp directory and the files left in it best-effort, deferring to exit the ones still mapped
+    private void cleanUp() {
+        open.clear();
+        closed.clear();
+        try (Stream<Path> paths = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) paths::iterator) deleteOrDefer(p);
+        } catch (IOException e) {
+            if (agent.verbose()) out.println("External A*: could not list " + dir + ": " + e);
+        }
+        deleteOrDefer(dir);
+    }
+
+    private void deleteOrDefer(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            p.toFile().deleteOnExit();
+            if (agent.verbose()) out.println("External A*: could not delete " + p + " now, on exit instead: " + e);
+        }
+    }
+
+    private List<EDirection> run() {
+        short[] start = MyAgent.packBoxes(MyAgent.board);
+        encode(MyAgent.board.playerX, MyAgent.board.playerY, start, 0, record);
+        add(record, 0, MyAgent.heuristic(start));
+        int lastF = -1;
+        while (!open.isEmpty()) {
+            Bucket bucket = open.pollFirstEntry().getValue();
+            if (agent.verbose() && bucket.g + bucket.h != lastF) {
+                lastF = bucket.g + bucket.h;
+                out.printf("External A*: f %d, %d expanded, %d closed, %d open, %d MB written\n", lastF,
+                        agent.searchedNodes, closedRecords, openRecords, bytesWritten >> 20);
+            }
+            RecordFile layer = finish(bucket);
+            // Every state with h == 0 has all boxes on goals
+            if (bucket.h == 0 && layer.count() > 0) {
+                layer.get(0, record, 0);
+                closed.computeIfAbsent(0, k -> new ArrayList<>()).add(layer);
+                return plan(record, bucket.g);
+            }
+            for (long r = 0; r < layer.count(); r++) {
+                if (agent.cancelled()) return null;
+                layer.get(r, record, 0);
+                expand(record, bucket.g, bucket.h);
+            }
+            List<RecordFile> segments = closed.computeIfAbsent(bucket.h, k -> new ArrayList<>());
+            segments.add(layer);
+            compact(segments);
+            closedRecords += layer.count();
+            metrics.visited(closedRecords, 0);
+        }
+        return null;
+    }
+
+    private void expand(long[] rec, int g, int h) {
+        agent.searchedNodes++;
+        int player = slot(rec, 0), playerX = player & 0xFF, playerY = (player >> 8) & 0xFF;
+        for (int b = 0; b < boxCount; b++) boxes[b] = (short) slot(rec, 1 + b);
+        MyAgent.occupy(boxes, occupied);
+        long hashBox = MyAgent.hashBoxes(boxes);
+        for (int i = 0; i < 4; i++) {
+            EDirection dir = MyAgent.dirList[i];
+            int nextX = playerX + dir.dX, nextY = playerY + dir.dY;
+            if (MyAgent.walls[nextX][nextY]) continue;
+            if (!occupied.get(nextX * height + nextY)) {
+                encode(nextX, nextY, boxes, 1 + i, child);
+                metrics.generated++;
+                add(child, g + 1, h);
+                continue;
+            }
+            int nextXX = nextX + dir.dX, nextYY = nextY + dir.dY;
+            if (MyAgent.walls[nextXX][nextYY] || occupied.get(nextXX * height + nextYY)) continue;
+            if (agent.dsd.detectSimple(nextXX, nextYY)) continue;
+            long nextHashBox = hashBox ^ MyAgent.zobrist_hashes[0][nextX][nextY]
+                    ^ MyAgent.zobrist_hashes[0][nextXX][nextYY];
+            occupied.move(nextX * height + nextY, nextXX * height + nextYY);
+            MyAgent.moveBox(boxes, nextX, nextY, nextXX, nextYY);
+            boolean deadlock = agent.dsd.detectFreeze(occupied, nextXX, nextYY, nextHashBox)
+                    || agent.corralDetection
+                    && agent.dsd.detectCorral(boxes, occupied, nextX, nextY, nextXX, nextYY);
+            if (!deadlock) encode(nextX, nextY, boxes, 1 + (i | 4), child);
+            occupied.move(nextXX * height + nextYY, nextX * height + nextY);
+            MyAgent.moveBox(boxes, nextXX, nextYY, nextX, nextY);
+            if (deadlock) continue;
+            metrics.generated++;
+            add(child, g + 1, h - MyAgent.minDists[nextX][nextY] + MyAgent.minDists[nextXX][nextYY]);
+        }
+    }
+
+    private void add(long[] rec, int g, int h) {
+        Bucket bucket = open.computeIfAbsent((long) (g + h) << 32 | g, k -> new Bucket(g, h));
+        bucket.buffer.add(rec, 0);
+        openRecords++;
+        metrics.open((int) Math.min(openRecords, Integer.MAX_VALUE));
+        if (++buffered > bufferRecords)
+            spill(open.values().stream().max(Comparator.comparingInt(b -> b.buffer.size())).get());
+    }
+
+    // Writes the buffer of a bucket out as a sorted run
+    private void spill(Bucket bucket) {
+        buffered -= bucket.buffer.size();
+        metrics.duplicates += bucket.buffer.sortUnique();
+        RecordFile run = bucket.buffer.write(newFile());
+        bytesWritten += run.bytes();
+        bucket.runs.add(run);
+        bucket.buffer.clear();
+    }
+
+    // Merges the runs of a bucket into one sorted file of the states not seen before
+    private RecordFile finish(Bucket bucket) {
+        buffered -= bucket.buffer.size();
+        openRecords -= bucket.buffer.size();
+        for (RecordFile run : bucket.runs) openRecords -= run.count();
+        metrics.duplicates += bucket.buffer.sortUnique();
+        List<RecordFile> segments = closed.getOrDefault(bucket.h, List.of());
+        RecordFile.Cursor[] seen = new RecordFile.Cursor[segments.size()];
+        for (int s = 0; s < seen.length; s++) seen[s] = segments.get(s).cursor();
+        // Sources: the buffer, then every run; heads[k * width] holds the next record of source k
+        int sources = 1 + bucket.runs.size();
+        RecordFile.Cursor[] runs = new RecordFile.Cursor[sources];
+        for (int k = 1; k < sources; k++) runs[k] = bucket.runs.get(k - 1).cursor();
+        long[] heads = new long[sources * width], last = new long[width];
+        boolean[] live = new boolean[sources];
+        int bufferPos = 0;
+        for (int k = 0; k < sources; k++) live[k] = k == 0 ? bufferPos < bucket.buffer.size() : runs[k].hasNext();
+        if (live[0]) System.arraycopy(bucket.buffer.data(), bufferPos++ * width, heads, 0, width);
+        for (int k = 1; k < sources; k++) if (live[k]) runs[k].next(heads, k * width);
+        RecordFile.Writer writer = newFile();
+        boolean first = true;
+        while (true) {
+            int min = -1;
+            for (int k = 0; k < sources; k++)
+                if (live[k] && (min < 0 || RecordFile.compare(heads, k * width, heads, min * width, width) < 0))
+                    min = k;
+            if (min < 0) break;
+            boolean duplicate = !first && sameKey(heads, min * width, last);
+            System.arraycopy(heads, min * width, last, 0, width);
+            first = false;
+            if (min == 0) {
+                live[0] = bufferPos < bucket.buffer.size();
+                if (live[0]) System.arraycopy(bucket.buffer.data(), bufferPos++ * width, heads, 0, width);
+            } else {
+                live[min] = runs[min].hasNext();
+                if (live[min]) runs[min].next(heads, min * width);
+            }
+            if (!duplicate) for (RecordFile.Cursor c : seen) if (c.seek(last, 0)) duplicate = true;
+            if (duplicate) metrics.duplicates++;
+            else writer.add(last, 0);
+        }
+        // Merged away; a run still mapped (Windows) stays in the temp directory until cleanUp()
+        for (RecordFile run : bucket.runs) run.delete();
+        bucket.buffer.clear();
+        RecordFile layer = writer.finish();
+        bytesWritten += layer.bytes();
+        return layer;
+    }
+
+    // Merges trailing segments until each is less than half the size of the one before
+    private void compact(List<RecordFile> segments) {
+        for (int n = segments.size(); n >= 2 && segments.get(n - 1).count() * 2 >= segments.get(n - 2).count();
+             n--) {
+            RecordFile a = segments.remove(n - 2), b = segments.remove(n - 2);
+            RecordFile.Cursor ca = a.cursor(), cb = b.cursor();
+            long[] ha = new long[width], hb = new long[width];
+            boolean la = ca.hasNext(), lb = cb.hasNext();
+            if (la) ca.next(ha, 0);
+            if (lb) cb.next(hb, 0);
+            RecordFile.Writer writer = newFile();
+            // Segments are disjoint, plain merge
+            while (la || lb) {
+                if (la && (!lb || RecordFile.compare(ha, 0, hb, 0, width) < 0)) {
+                    writer.add(ha, 0);
+                    if (la = ca.hasNext()) ca.next(ha, 0);
+                } else {
+                    writer.add(hb, 0);
+                    if (lb = cb.hasNext()) cb.next(hb, 0);
+                }
+            }
+            RecordFile merged = writer.finish();
+            bytesWritten += merged.bytes();
+            a.delete();
+            b.delete();
+            segments.add(merged);
+        }
+    }
+
+    // Undoes the actions of the records from the goal back to the start
+    private List<EDirection> plan(long[] goal, int g) {
+        long[] rec = goal.clone();
+        int[] path = new int[g];
+        for (int k = g - 1; k >= 0; k--) {
+            int action = (int) (rec[width - 1] & 0xFFFF) - 1;
+            if (action < 0) throw new IllegalStateException("External A*: start reached after " + (g - 1 - k));
+            EDirection dir = MyAgent.dirList[action & 3];
+            int player = slot(rec, 0), playerX = player & 0xFF, playerY = (player >> 8) & 0xFF;
+            for (int b = 0; b < boxCount; b++) boxes[b] = (short) slot(rec, 1 + b);
+            if ((action & 4) != 0) MyAgent.moveBox(boxes, playerX + dir.dX, playerY + dir.dY, playerX, playerY);
+            encode(playerX - dir.dX, playerY - dir.dY, boxes, 0, rec);
+            rec[width - 1] |= lookupTag(rec, MyAgent.heuristic(boxes));
+            path[k] = action & 3;
+        }
+        if ((rec[width - 1] & 0xFFFF) != 0) throw new IllegalStateException("External A*: plan misses the start");
+        List<EDirection> actions = new ArrayList<>(g);
+        for (int i : path) actions.add(MyAgent.dirList[i]);
+        return actions;
+    }
+
+    private long lookupTag(long[] rec, int h) {
+        for (RecordFile segment : closed.getOrDefault(h, List.of())) {
+            long i = segment.find(rec, 0);
+            if (i >= 0) return segment.tag(i);
+        }
+        throw new IllegalStateException("External A*: parent state not found");
+    }
+
+    // Packs player, boxes (sorted) and tag into 'rec'
+    private void encode(int playerX, int playerY, short[] boxes, int tag, long[] rec) {
+        System.arraycopy(boxes, 0, sorted, 0, boxCount);
+        for (int i = 1; i < boxCount; i++) {
+            short b = sorted[i];
+            int j = i;
+            for (; j > 0 && (sorted[j - 1] & 0xFFFF) > (b & 0xFFFF); j--) sorted[j] = sorted[j - 1];
+            sorted[j] = b;
+        }
+        Arrays.fill(rec, 0);
+        setSlot(rec, 0, (playerX & 0xFF) | (playerY & 0xFF) << 8);
+        for (int b = 0; b < boxCount; b++) setSlot(rec, 1 + b, sorted[b] & 0xFFFF);
+        rec[width - 1] |= tag;
+    }
+
+    // Slot k is bits [48 - 16 * (k % 4), 64 - 16 * (k % 4)) of word k / 4, so records compare slot by slot
+    private static int slot(long[] rec, int k) {
+        return (int) (rec[k >> 2] >>> (48 - 16 * (k & 3))) & 0xFFFF;
+    }
+
+    private static void setSlot(long[] rec, int k, int value) {
+        rec[k >> 2] |= (long) value << (48 - 16 * (k & 3));
+    }
+
+    private boolean sameKey(long[] a, int off, long[] b) {
+        for (int j = 0; j < width - 1; j++) if (a[off + j] != b[j]) return false;
+        return (a[off + width - 1] ^ b[width - 1]) >>> TAG_BITS == 0;
+    }
+
+    private RecordFile.Writer newFile() {
+        return RecordFile.writer(dir.resolve("r" + files++), width, TAG_BITS);
+    }
+
+    private class Bucket {
+        final int g, h;
+        final RecordBuffer buffer = new RecordBuffer(width, TAG_BITS);
+        final List<RecordFile> runs = new ArrayList<>();
+
+        Bucket(int g, int h) {
+            this.g = g;
+            this.h = h;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import static java.lang.System.out;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import agents.search.BitBoard;
+import agents.search.BucketQueue;
+import agents.search.LongHashSet;
+import agents.search.LongIntHashMap;
+import agents.search.NodeArena;
+import game.SearchMetrics;
+import game.actions.EDirection;
+
+// Hash-distributed parallel A* (HDA*) over the same state space as MyAgent.a_star().
+// Every state is owned by the worker selected by its hashFull bits; successors are sent to their owner through
+// lock-free inboxes and each worker keeps a local open list, node arena and best-g table. A solution is proven
+// optimal once no worker holds a node with f below the incumbent and no messages are in flight. A worker with nothing
+// to do spins briefly, then parks until a batch is delivered to it, the search goes quiescent or it is stopped.
+class HdaStar {
+    // Successors buffered per destination before being handed over
+    private static final int BATCH = 64;
+    // Expansions between forced flushes of all outgoing buffers
+    private static final int FLUSH_INTERVAL = 512;
+    // Spins of an idle worker before it parks, and the longest park between checks of the deadline
+    private static final int IDLE_SPINS = 256;
+    private static final long PARK_NANOS = 1_000_000;
+
+    private final MyAgent agent;
+    private final Worker[] workers;
+    private final long completedHash;
+    // In-flight message batches + busy workers; the search is quiescent when it drops to 0
+    private final AtomicLong work;
+    private volatile int incumbent = Integer.MAX_VALUE;
+    private volatile boolean stop;
+    // Global reference (worker << 32 | node) of the best goal node found
+    private long goalRef = -1;
+
+    // A successor travelling to its owner
+    static final class Msg {
+        final short[] boxes;
+        final long hashBox, parent;
+        final int player, g, h, dir;
+
+        Msg(short[] boxes, long hashBox, int player, int g, int h, int dir, long parent) {
+            this.boxes = boxes;
+            this.hashBox = hashBox;
+            this.player = player;
+            this.g = g;
+            this.h = h;
+            this.dir = dir;
+            this.parent = parent;
+        }
+    }
+
+    HdaStar(MyAgent agent, int threads) {
+        this.agent = agent;
+        this.completedHash = agent.completedHash();
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new Worker(i);
+        this.work = new AtomicLong(threads);
+    }
+
+    List<EDirection> search() {
+        short[] boxes = MyAgent.packBoxes(MyAgent.board);
+        long hashBox = MyAgent.hashBoxes(boxes);
+        int player = (MyAgent.board.playerX & 0xFF) | (MyAgent.board.playerY & 0xFF) << 8;
+        MatchingHeuristic matcher = agent.newMatcher();
+        int h = matcher != null ? matcher.solve(boxes) : MyAgent.heuristic(boxes);
+        Msg start = new Msg(boxes, hashBox, player, 0, h, 0, -1);
+        workers[owner(hashFull(hashBox, player))].insert(start);
+        for (Worker w : workers) w.start();
+        try {
+            for (Worker w : workers) w.join();
+        } catch (InterruptedException e) {
+            stop = true;
+            for (Worker w : workers) w.interrupt();
+            return null;
+        }
+        long expanded = 0, visited = 0;
+        double load = 0;
+        SearchMetrics metrics = agent.metrics();
+        for (Worker w : workers) {
+            if (w.failure != null) throw new RuntimeException("HDA* worker failed", w.failure);
+            expanded += w.expanded;
+            metrics.generated += w.generated;
+            metrics.duplicates += w.duplicates;
+            visited += w.bestG.size();
+            load += w.bestG.loadFactor() / workers.length;
+            for (int i = 0; i < agent.dsd.skipped.length; i++) agent.dsd.skipped[i] += w.dsd.skipped[i];
+        }
+        agent.searchedNodes += (int) expanded;
+        metrics.visited(visited, load);
+        if (agent.verbose()) {
+            out.printf("HDA*: %d workers, incumbent %s\n", workers.length,
+                    goalRef < 0 ? "none" : String.valueOf(incumbent));
+            for (Worker w : workers)
+                out.printf("  worker %d: %d expanded, %d received, %d stale\n", w.id, w.expanded, w.received, w.stale);
+        }
+        if (goalRef < 0) return null;
+        // Follow parent references across worker arenas
+        List<EDirection> actions = new LinkedList<>();
+        for (long ref = goalRef; ; ) {
+            Worker w = workers[(int) (ref >>> 32)];
+            int node = (int) ref;
+            long parent = w.parents[node];
+            if (parent < 0) break;
+            actions.add(0, MyAgent.dirList[w.nodes.dir(node)]);
+            ref = parent;
+        }
+        return actions;
+    }
+
+    private long hashFull(long hashBox, int player) {
+        return hashBox ^ MyAgent.zobrist_hashes[1][player & 0xFF][player >> 8];
+    }
+
+    private int owner(long hashFull) {
+        return (int) ((LongHashSet.mix(hashFull) >>> 1) % workers.length);
+    }
+
+    // Wakes every parked worker, once the search is quiescent or stopped
+    private void wakeAll() {
+        for (Worker w : workers) LockSupport.unpark(w);
+    }
+
+    private synchronized void offerSolution(int g, long ref) {
+        if (g >= incumbent) return;
+        incumbent = g;
+        goalRef = ref;
+    }
+
+    class Worker extends Thread {
+        final int id;
+        final ConcurrentLinkedQueue<List<Msg>> inbox = new ConcurrentLinkedQueue<>();
+        final NodeArena nodes = new NodeArena(MyAgent.board.boxCount);
+        final BucketQueue open = new BucketQueue();
+        final LongIntHashMap bestG = new LongIntHashMap(1 << 16);
+        final MyAgent.DeadSquareDetector dsd = agent.dsd.fork();
+        final MatchingHeuristic matcher = agent.newMatcher();
+        // Box occupancy of the expanded node
+        final int height = MyAgent.board.height();
+        final BitBoard occupied = new BitBoard(MyAgent.board.width() * height);
+        // Global parent reference and g of each local node
+        long[] parents = new long[1 << 16];
+        int[] gs = new int[1 << 16];
+        final List<List<Msg>> outgoing = new ArrayList<>();
+        long expanded, received, stale, generated, duplicates;
+        boolean busy = true;
+        // Set while parked, so senders know to wake it
+        volatile boolean parked;
+        Throwable failure;
+
+        Worker(int id) {
+            super("HdaStar-" + id);
+            this.id = id;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < workers.length; i++) outgoing.add(new ArrayList<>(BATCH));
+                loop();
+            } catch (Throwable t) {
+                failure = t;
+                stop = true;
+                wakeAll();
+            }
+        }
+
+        private void loop() {
+            short[] boxes = new short[MyAgent.board.boxCount];
+            int spins = 0;
+            while (!stop) {
+                // Out of time: the incumbent, if any, is returned unproven
+                if (agent.cancelled()) {
+                    stop = true;
+                    wakeAll();
+                    return;
+                }
+                drainInbox();
+                if (!open.isEmpty() && open.minPriority() < incumbent) {
+                    expand(open.poll(), boxes);
+                    if (expanded % FLUSH_INTERVAL == 0) flushAll();
+                    spins = 0;
+                    continue;
+                }
+                // Nothing below the incumbent left locally
+                flushAll();
+                if (busy) {
+                    busy = false;
+                    if (work.decrementAndGet() == 0) wakeAll();
+                }
+                if (work.get() == 0) return;
+                if (++spins < IDLE_SPINS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                // Park until a sender or the last busy worker unparks it; bounded, to notice the deadline
+                parked = true;
+                if (inbox.isEmpty() && work.get() != 0 && !stop) LockSupport.parkNanos(this, PARK_NANOS);
+                parked = false;
+            }
+        }
+
+        private void drainInbox() {
+            for (List<Msg> batch; (batch = inbox.poll()) != null; ) {
+                // Become busy before consuming the batch token so the counter never drops to 0 in between
+                if (!busy) {
+                    busy = true;
+                    work.incrementAndGet();
+                }
+                for (Msg m : batch) insert(m);
+                received += batch.size();
+                work.decrementAndGet();
+            }
+        }
+
+        // Adds a state owned by this worker unless an equal or cheaper path to it is known
+        void insert(Msg m) {
+            int f = m.g + m.h;
+            if (f >= incumbent) return;
+            long hashFull = hashFull(m.hashBox, m.player);
+            if (bestG.get(hashFull, Integer.MAX_VALUE) <= m.g) {
+                duplicates++;
+                return;
+            }
+            bestG.put(hashFull, m.g);
+            generated++;
+            int node = nodes.add(NodeArena.NONE, m.dir, m.player, f, nodes.intern(m.boxes, m.hashBox));
+            if (node == parents.length) {
+                parents = Arrays.copyOf(parents, node + (node >> 1));
+                gs = Arrays.copyOf(gs, parents.length);
+            }
+            parents[node] = m.parent;
+            gs[node] = m.g;
+            open.add(node, f);
+        }
+
+        private void expand(int node, short[] boxes) {
+            int g = gs[node], f = nodes.f(node);
+            long hashBox = nodes.hashBox(node);
+            int player = nodes.player(node);
+            // Skip entries superseded by a cheaper path
+            if (bestG.get(hashFull(hashBox, player), Integer.MAX_VALUE) < g) {
+                stale++;
+                return;
+            }
+            expanded++;
+            long ref = (long) id << 32 | node;
+            if (hashBox == completedHash) {
+                offerSolution(g, ref);
+                return;
+            }
+            int h = f - g, playerX = player & 0xFF, playerY = player >> 8;
+            nodes.boxes(nodes.boxRef(node), boxes);
+            MyAgent.occupy(boxes, occupied);
+            boolean matcherLoaded = false;
+            // Box set shared by all plain moves, as messages may outlive the scratch array
+            short[] moveBoxes = null;
+            for (int i = 0; i < 4; i++) {
+                EDirection dir = MyAgent.dirList[i];
+                int nextX = playerX + dir.dX, nextY = playerY + dir.dY;
+                if (MyAgent.walls[nextX][nextY]) continue;
+                int nextPlayer = (nextX & 0xFF) | (nextY & 0xFF) << 8;
+                if (!occupied.get(nextX * height + nextY)) {
+                    if (moveBoxes == null) moveBoxes = boxes.clone();
+                    send(new Msg(moveBoxes, hashBox, nextPlayer, g + 1, h, i, ref));
+                    continue;
+                }
+                int nextXX = nextX + dir.dX, nextYY = nextY + dir.dY;
+                if (MyAgent.walls[nextXX][nextYY] || occupied.get(nextXX * height + nextYY)) continue;
+                if (dsd.detectSimple(nextXX, nextYY)) continue;
+                long nextHashBox = hashBox ^ MyAgent.zobrist_hashes[0][nextX][nextY]
+                        ^ MyAgent.zobrist_hashes[0][nextXX][nextYY];
+                short[] nextBoxes = boxes.clone();
+                int movedBox = MyAgent.moveBox(nextBoxes, nextX, nextY, nextXX, nextYY);
+                occupied.move(nextX * height + nextY, nextXX * height + nextYY);
+                boolean deadlock = dsd.detectFreeze(occupied, nextXX, nextYY, nextHashBox) || agent.corralDetection
+                        && dsd.detectCorral(nextBoxes, occupied, nextX, nextY, nextXX, nextYY);
+                occupied.move(nextXX * height + nextYY, nextX * height + nextY);
+                if (deadlock) continue;
+                int nextH;
+                if (matcher == null) nextH = h - MyAgent.minDists[nextX][nextY] + MyAgent.minDists[nextXX][nextYY];
+                else {
+                    if (!matcherLoaded) {
+                        matcher.load(hashBox, boxes);
+                        matcherLoaded = true;
+                    }
+                    nextH = matcher.moved(movedBox, nextXX, nextYY, nextHashBox);
+                    if (nextH >= MatchingHeuristic.UNREACHABLE) continue;
+                }
+                send(new Msg(nextBoxes, nextHashBox, nextPlayer, g + 1, nextH, i, ref));
+            }
+        }
+
+        private void send(Msg m) {
+            if (m.g + m.h >= incumbent) return;
+            int dest = owner(hashFull(m.hashBox, m.player));
+            if (dest == id) {
+                insert(m);
+                return;
+            }
+            List<Msg> buf = outgoing.get(dest);
+            buf.add(m);
+            if (buf.size() >= BATCH) flush(dest);
+        }
+
+        private void flush(int dest) {
+            List<Msg> buf = outgoing.get(dest);
+            if (buf.isEmpty()) return;
+            work.incrementAndGet();
+            Worker w = workers[dest];
+            w.inbox.offer(buf);
+            if (w.parked) LockSupport.unpark(w);
+            outgoing.set(dest, new ArrayList<>(BATCH));
+        }
+
+        private void flushAll() {
+            for (int i = 0; i < workers.length; i++) flush(i);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import static java.lang.System.out;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import agents.search.BitBoard;
+import agents.search.TranspositionTable;
+import game.SearchMetrics;
+import game.actions.EDirection;
+
+// Iterative deepening A* over the same state space as MyAgent.a_star(), with memory bounded by a fixed-size
+// transposition table instead of a closed set.
+// Each iteration is a depth-first search cut off at f > bound; the next bound is the smallest f that was cut off.
+// The table keeps a backed-up lower bound on the cost-to-go of every state it holds (the heuristic raised by earlier
+// failed searches below it), which prunes transpositions, and flags the current path to cut cycles. Children are
+// searched in order of their heuristic. Solutions are move-optimal.
+class IdaStar {
+    private static final int FOUND = -1;
+    private static final int INF = Integer.MAX_VALUE;
+
+    private final MyAgent agent;
+    private final TranspositionTable tt;
+    private final MatchingHeuristic matcher;
+    private final SearchMetrics metrics;
+    private final long completedHash;
+    private final int height;
+    // Boxes and occupancy of the node being searched, updated in place along the path
+    private final short[] boxes;
+    private final BitBoard occupied;
+    // Direction taken at each depth of the current path
+    private int[] path = new int[256];
+    // Children of each depth, 4 slots per depth: direction, raised and raw heuristic, box hash
+    private int[] childDir = new int[1024], childH = new int[1024], childRawH = new int[1024];
+    private long[] childHash = new long[1024];
+    private int bound, nextBound, solutionLength;
+    // Set when the agent was stopped, unwinds the search without updating the table
+    private boolean aborted;
+
+    IdaStar(MyAgent agent, int ttEntries) {
+        this.agent = agent;
+        this.tt = new TranspositionTable(ttEntries);
+        this.matcher = agent.newMatcher();
+        this.metrics = agent.metrics();
+        this.completedHash = agent.completedHash();
+        this.height = MyAgent.board.height();
+        this.boxes = MyAgent.packBoxes(MyAgent.board);
+        this.occupied = new BitBoard(MyAgent.board.width() * height);
+    }
+
+    List<EDirection> search() {
+        MyAgent.occupy(boxes, occupied);
+        long hashBox = MyAgent.hashBoxes(boxes);
+        int h = matcher != null ? matcher.solve(boxes) : MyAgent.heuristic(boxes);
+        if (h >= MatchingHeuristic.UNREACHABLE) return null;
+        for (bound = h; ; bound = nextBound) {
+            nextBound = INF;
+            int res = dfs(0, MyAgent.board.playerX, MyAgent.board.playerY, hashBox, h, h);
+            metrics.visited(tt.size(), (double) tt.size() / tt.capacity());
+            if (aborted) return null;
+            if (agent.verbose())
+                out.printf("IDA*: bound %d done, %d nodes, TT %s\n", bound, agent.searchedNodes, tt.stats());
+            if (res == FOUND) break;
+            if (nextBound == INF) return null;
+        }
+        List<EDirection> actions = new ArrayList<>(solutionLength);
+        for (int i = 0; i < solutionLength; i++) actions.add(MyAgent.dirList[path[i]]);
+        return actions;
+    }
+
+    // Searches below the node at depth g with heuristic 'rawH', raised to 'h' by the table and pathmax; returns FOUND
+    // or a lower bound on the f of any solution through the node
+    private int dfs(int g, int playerX, int playerY, long hashBox, int rawH, int h) {
+        agent.searchedNodes++;
+        if (agent.cancelled()) aborted = true;
+        if (aborted) return INF;
+        if (hashBox == completedHash) {
+            solutionLength = g;
+            return FOUND;
+        }
+        long hashFull = hashBox ^ MyAgent.zobrist_hashes[1][playerX][playerY];
+        tt.enter(hashFull, h);
+        ensureDepth(g);
+        int base = g * 4, count = 0, lower = INF;
+        boolean matcherLoaded = false;
+        for (int i = 0; i < 4; i++) {
+            EDirection dir = MyAgent.dirList[i];
+            int nextX = playerX + dir.dX, nextY = playerY + dir.dY;
+            if (MyAgent.walls[nextX][nextY]) continue;
+            long nextHashBox = hashBox;
+            int nextRawH = rawH;
+            if (occupied.get(nextX * height + nextY)) {
+                int nextXX = nextX + dir.dX, nextYY = nextY + dir.dY;
+                if (MyAgent.walls[nextXX][nextYY] || occupied.get(nextXX * height + nextYY)) continue;
+                if (agent.dsd.detectSimple(nextXX, nextYY)) continue;
+                nextHashBox ^= MyAgent.zobrist_hashes[0][nextX][nextY] ^ MyAgent.zobrist_hashes[0][nextXX][nextYY];
+                if (matcher != null && !matcherLoaded) {
+                    matcher.load(hashBox, boxes);
+                    matcherLoaded = true;
+                }
+                int movedBox = push(nextX, nextY, nextXX, nextYY);
+                boolean deadlock = agent.dsd.detectFreeze(occupied, nextXX, nextYY, nextHashBox)
+                        || agent.corralDetection
+                        && agent.dsd.detectCorral(boxes, occupied, nextX, nextY, nextXX, nextYY);
+                if (!deadlock) nextRawH = matcher == null
+                        ? rawH - MyAgent.minDists[nextX][nextY] + MyAgent.minDists[nextXX][nextYY]
+                        : matcher.moved(movedBox, nextXX, nextYY, nextHashBox);
+                push(nextXX, nextYY, nextX, nextY);
+                if (deadlock || nextRawH >= MatchingHeuristic.UNREACHABLE) continue;
+            }
+            long nextHashFull = nextHashBox ^ MyAgent.zobrist_hashes[1][nextX][nextY];
+            // Raise the heuristic to what earlier failed searches proved, and by pathmax (one move costs 1)
+            int nextH = Math.max(Math.max(nextRawH, h - 1), tt.get(nextHashFull, 0));
+            // Proven dead end
+            if (nextH == INF) continue;
+            int f = g + 1 + nextH;
+            // A cycle never helps, but the child's bound still limits what can be proved about this node
+            if (tt.onPath(nextHashFull)) {
+                metrics.duplicates++;
+                lower = Math.min(lower, f);
+                continue;
+            }
+            if (f > bound) {
+                lower = Math.min(lower, f);
+                nextBound = Math.min(nextBound, f);
+                continue;
+            }
+            // Insert in heuristic order
+            metrics.generated++;
+            int k = base + count++;
+            for (; k > base && childH[k - 1] > nextH; k--) {
+                childDir[k] = childDir[k - 1];
+                childH[k] = childH[k - 1];
+                childRawH[k] = childRawH[k - 1];
+                childHash[k] = childHash[k - 1];
+            }
+            childDir[k] = i;
+            childH[k] = nextH;
+            childRawH[k] = nextRawH;
+            childHash[k] = nextHashBox;
+        }
+        for (int k = base; k < base + count; k++) {
+            int i = childDir[k];
+            EDirection dir = MyAgent.dirList[i];
+            int nextX = playerX + dir.dX, nextY = playerY + dir.dY;
+            boolean pushing = childHash[k] != hashBox;
+            if (pushing) push(nextX, nextY, nextX + dir.dX, nextY + dir.dY);
+            path[g] = i;
+            int res = dfs(g + 1, nextX, nextY, childHash[k], childRawH[k], childH[k]);
+            if (pushing) push(nextX + dir.dX, nextY + dir.dY, nextX, nextY);
+            if (res == FOUND) return FOUND;
+            if (aborted) return INF;
+            lower = Math.min(lower, res);
+        }
+        tt.leave(hashFull, lower == INF ? INF : Math.max(h, lower - g));
+        return lower;
+    }
+
+    // Moves the box at [x, y] to [xx, yy] in the box array and the occupancy, returns its index
+    private int push(int x, int y, int xx, int yy) {
+        occupied.move(x * height + y, xx * height + yy);
+        return MyAgent.moveBox(boxes, x, y, xx, yy);
+    }
+
+    private void ensureDepth(int g) {
+        if (g < path.length) return;
+        path = Arrays.copyOf(path, path.length * 2);
+        childDir = Arrays.copyOf(childDir, path.length * 4);
+        childH = Arrays.copyOf(childH, path.length * 4);
+        childRawH = Arrays.copyOf(childRawH, path.length * 4);
+        childHash = Arrays.copyOf(childHash, path.length * 4);
+    }
+}
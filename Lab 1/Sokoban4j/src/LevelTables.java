@@ -0,0 +1,155 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import game.board.slim.BoardSlim;
+import game.board.slim.STile;
+
+// Static tables of a level: walls, Zobrist keys, push distances and dead squares, which depend only on its walls and
+// goals.
+// The key is a 64-bit FNV-1a hash of the dimensions and the wall and goal flags of every tile. Zobrist keys are drawn
+// from a generator seeded with it, so state hashes are the same in every run on the level. With a cache directory the
+// push analysis, the expensive part, is stored in a binary file named after the key and memory-mapped by later runs
+// instead of being recomputed. The file holds the goal distances and the dead squares (minimum distances follow from
+// the former) behind a header that repeats the dimensions and goals, so a key collision or a stale format is detected
+// and the tables are rebuilt.
+class LevelTables {
+    // "SKLT", bumped with the version whenever PushDistances changes what it computes
+    private static final int MAGIC = 0x534B4C54;
+    private static final int VERSION = 1;
+
+    final long key;
+    final boolean[][] walls;
+    // 0 -> boxes, 1 -> player
+    final long[][][] zobrist;
+    final int[][] minDists;
+    final int[][] goalDists;
+    final boolean[][] dead;
+    // TRUE if the push analysis came from the cache
+    final boolean loaded;
+
+    private LevelTables(long key, boolean[][] walls, long[][][] zobrist, int[][] goalDists, boolean[][] dead,
+                        boolean loaded) {
+        this.key = key;
+        this.walls = walls;
+        this.zobrist = zobrist;
+        this.goalDists = goalDists;
+        this.dead = dead;
+        this.loaded = loaded;
+        int width = walls.length, height = walls[0].length;
+        minDists = new int[width][height];
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++) {
+                int d = PushDistances.INF;
+                for (int[] dists : goalDists) d = Math.min(d, dists[x * height + y]);
+                minDists[x][y] = d;
+            }
+    }
+
+    // Tables of 'board', read from or added to 'cacheDir' unless it is null
+    static LevelTables of(BoardSlim board, List<MyAgent.Point> goals, String cacheDir) {
+        int width = board.width(), height = board.height();
+        long key = key(board);
+        boolean[][] walls = new boolean[width][height];
+        long[][][] zobrist = new long[2][width][height];
+        Random rand = new Random(key);
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++) {
+                walls[x][y] = STile.isWall(board.tiles[x][y]);
+                zobrist[0][x][y] = rand.nextLong();
+                zobrist[1][x][y] = rand.nextLong();
+            }
+        Path file = cacheDir == null ? null : Paths.get(cacheDir, String.format("%016x.lvl", key));
+        if (file != null && Files.isRegularFile(file)) {
+            LevelTables tables = read(file, key, walls, zobrist, goals);
+            if (tables != null) return tables;
+        }
+        PushDistances pushDists = new PushDistances(board, goals);
+        LevelTables tables = new LevelTables(key, walls, zobrist, pushDists.goalDists, pushDists.dead, false);
+        if (file != null) tables.write(file, goals);
+        return tables;
+    }
+
+    static long key(BoardSlim board) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ board.width()) * 0x100000001b3L;
+        hash = (hash ^ board.height()) * 0x100000001b3L;
+        for (byte[] column : board.tiles)
+            for (byte tile : column) hash = (hash ^ (tile & (STile.WALL_FLAG | STile.PLACE_FLAG))) * 0x100000001b3L;
+        return hash;
+    }
+
+    // Reads the push analysis, null if the file does not belong to this level or format
+    private static LevelTables read(Path file, long key, boolean[][] walls, long[][][] zobrist,
+                                    List<MyAgent.Point> goals) {
+        int width = walls.length, height = walls[0].length, cells = width * height;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size != fileSize(cells, goals.size())) return null;
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getLong() != key || map.getInt() != width
+                    || map.getInt() != height || map.getInt() != goals.size()) return null;
+            for (MyAgent.Point g : goals) if (map.getInt() != (g.x | g.y << 8)) return null;
+            IntBuffer ints = map.asIntBuffer();
+            int[][] goalDists = new int[goals.size()][cells];
+            for (int[] dists : goalDists) ints.get(dists);
+            map.position(map.position() + 4 * goals.size() * cells);
+            boolean[][] dead = new boolean[width][height];
+            for (int x = 0; x < width; x++)
+                for (int y = 0; y < height; y++) dead[x][y] = map.get() != 0;
+            return new LevelTables(key, walls, zobrist, goalDists, dead, true);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Writes the push analysis through a temporary file, so concurrent runs never see a partial one; a failure only
+    // costs the next run the recomputation
+    private void write(Path file, List<MyAgent.Point> goals) {
+        int width = walls.length, height = walls[0].length;
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(key);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.writeInt(goals.size());
+                for (MyAgent.Point g : goals) out.writeInt(g.x | g.y << 8);
+                for (int[] dists : goalDists) for (int d : dists) out.writeInt(d);
+                for (boolean[] column : dead) for (boolean d : column) out.writeByte(d ? 1 : 0);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static long fileSize(int cells, int goals) {
+        return 4 + 4 + 8 + 4 + 4 + 4 + 4L * goals + 4L * goals * cells + cells;
+    }
+
+    @Override
+    public String toString() {
+        int deadCount = 0;
+        for (boolean[] column : dead) for (boolean d : column) if (d) deadCount++;
+        return String.format("level %016x, %d dead squares, push analysis %s", key, deadCount,
+                loaded ? "cached" : "computed");
+    }
+}
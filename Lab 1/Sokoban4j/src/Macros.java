@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import agents.search.BitBoard;
+import game.board.slim.STile;
+
+// Static tunnel and goal room analysis for macro pushes, computed once per level from walls, goals and dead squares.
+// A square is a tunnel along an axis when walls close both of its sides across that axis. A box pushed along a tunnel
+// with the player following inside it can only go on or come back, so it is pushed on while the next square is free
+// and alive and the box is not on a goal, all as one edge.
+// A goal room is an area holding goals that the rest of the level reaches only through one entrance square. Its goals
+// get a fill order (farthest from the entrance first, keeping the empty part connected to the entrance) and, for each
+// number of goals filled in that order, a scripted push sequence taking a box from the entrance to the next goal. A box
+// pushed onto the entrance is packed with one edge as long as the room holds exactly the goals filled so far.
+// Macros cut branching but give up optimality: solutions stay valid, they are no longer guaranteed move- or
+// push-optimal. A push is encoded as (square the box leaves, where the player ends) << 2 | direction, squares as
+// x * height + y.
+class Macros {
+    // Largest room (free squares) scripted, push scripts are a BFS over box and player squares of the room
+    private static final int ROOM_LIMIT = 64;
+
+    private final boolean[] wall, goal, dead;
+    // Index offsets per direction, in EDirection index order
+    private final int[] step = new int[4];
+    // Axes a square is a tunnel along: bit 0 vertical (walls left and right), bit 1 horizontal (walls above and below)
+    private final byte[] tunnel;
+    // Room index + 1 of every entrance square, 0 elsewhere
+    private final byte[] entranceOf;
+    final List<Room> rooms = new ArrayList<>();
+    int tunnelSquares;
+    // Scratch buffer of the macro being built
+    private int[] pushes = new int[16];
+
+    static final class Room {
+        final int entrance;
+        // Room squares, entrance excluded
+        final int[] squares;
+        // Goals in fill order; scripts[j][dir] takes a box pushed onto the entrance in 'dir' to order[j] with the
+        // goals before it filled (null if no box can enter that way), entrance push included
+        final int[] order;
+        final int[][][] scripts;
+
+        Room(int entrance, int[] squares, int[] order, int[][][] scripts) {
+            this.entrance = entrance;
+            this.squares = squares;
+            this.order = order;
+            this.scripts = scripts;
+        }
+    }
+
+    Macros(boolean[][] dead) {
+        int width = MyAgent.board.width(), height = MyAgent.board.height();
+        int n = width * height;
+        wall = new boolean[n];
+        goal = new boolean[n];
+        this.dead = new boolean[n];
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++) {
+                wall[x * height + y] = MyAgent.walls[x][y];
+                goal[x * height + y] = (MyAgent.board.tiles[x][y] & STile.PLACE_FLAG) != 0;
+                this.dead[x * height + y] = dead[x][y];
+            }
+        for (int i = 0; i < 4; i++) step[i] = MyAgent.dirList[i].dX * height + MyAgent.dirList[i].dY;
+        tunnel = new byte[n];
+        // Border squares are walls in every level, so inner squares have four neighbours
+        for (int x = 1; x < width - 1; x++)
+            for (int y = 1; y < height - 1; y++) {
+                int p = x * height + y;
+                if (wall[p]) continue;
+                if (wall[p + step[1]] && wall[p + step[3]]) tunnel[p] |= 1;
+                if (wall[p + step[0]] && wall[p + step[2]]) tunnel[p] |= 2;
+                if (tunnel[p] != 0) tunnelSquares++;
+            }
+        entranceOf = new byte[n];
+        findRooms(MyAgent.board.playerX * height + MyAgent.board.playerY);
+    }
+
+    // Macro starting with the push of the box on 'box' in 'dir' (box occupancy 'occupied', the box not moved yet), or
+    // null if it is a plain push
+    int[] macro(BitBoard occupied, int box, int dir) {
+        // A box resting on an entrance is packed by the script alone
+        int[] entering = script(occupied, box, dir);
+        if (entering != null) return entering.length > 1 ? entering : null;
+        int k = 0;
+        pushes[k++] = box << 2 | dir;
+        while (true) {
+            int[] script = script(occupied, box + step[dir], dir);
+            if (script != null) {
+                if (pushes.length < k + script.length) pushes = Arrays.copyOf(pushes, k + script.length);
+                System.arraycopy(script, 0, pushes, k, script.length);
+                k += script.length;
+                break;
+            }
+            if (!follows(occupied, box, dir)) break;
+            box += step[dir];
+            if (k == pushes.length) pushes = Arrays.copyOf(pushes, 2 * k);
+            pushes[k++] = box << 2 | dir;
+        }
+        return k == 1 ? null : Arrays.copyOf(pushes, k);
+    }
+
+    // Further pushes in 'dir' of a tunnel macro after the box was pushed away from 'player', 0 if none
+    int tunnel(BitBoard occupied, int player, int dir) {
+        int k = 0;
+        for (; follows(occupied, player, dir); k++) player += step[dir];
+        return k;
+    }
+
+    // Square the player ends on after 'push'
+    static int square(int push) {
+        return push >> 2;
+    }
+
+    static int dir(int push) {
+        return push & 3;
+    }
+
+    // TRUE if the box just pushed away from 'player' in 'dir' has to be pushed on along a tunnel
+    private boolean follows(BitBoard occupied, int player, int dir) {
+        int box = player + step[dir], next = box + step[dir], axis = 1 << (dir & 1);
+        return (tunnel[player] & axis) != 0 && (tunnel[box] & axis) != 0 && !goal[box] && !wall[next]
+                && !occupied.get(next) && !dead[next];
+    }
+
+    // Script packing the box on 'entrance', pushed on in 'dir', into its room (shared, not to be modified); null if
+    // this is no room entrance or the room holds other boxes than its first goals in fill order
+    private int[] script(BitBoard occupied, int entrance, int dir) {
+        if (entranceOf[entrance] == 0) return null;
+        Room room = rooms.get(entranceOf[entrance] - 1);
+        int filled = 0;
+        while (filled < room.scripts.length && occupied.get(room.order[filled])) filled++;
+        if (filled == room.scripts.length) return null;
+        int inside = 0;
+        for (int p : room.squares) if (occupied.get(p)) inside++;
+        return inside == filled ? room.scripts[filled][dir] : null;
+    }
+
+    // Rooms are the areas cut off from the player start by a single non-goal square and holding goals.
+    // Smaller rooms win, rooms overlapping one already taken are dropped.
+    private void findRooms(int start) {
+        int n = wall.length;
+        BitBoard floor = new BitBoard(n), blocked = new BitBoard(n);
+        int[] queue = new int[n];
+        int floorSize = flood(start, floor, blocked, queue, n);
+        // Entrance, first room square and size of every candidate
+        List<int[]> candidates = new ArrayList<>();
+        for (int e = 0; e < n; e++) {
+            if (!floor.get(e) || goal[e] || e == start) continue;
+            blocked.clear();
+            blocked.set(e);
+            for (int i = 0; i < 4; i++) {
+                int from = e + step[i];
+                if (wall[from] || blocked.get(from)) continue;
+                int size = flood(from, blocked, blocked, queue, floorSize);
+                if (size > ROOM_LIMIT) continue;
+                boolean hasStart = false;
+                int goals = 0;
+                for (int k = 0; k < size; k++) {
+                    hasStart |= queue[k] == start;
+                    if (goal[queue[k]]) goals++;
+                }
+                if (!hasStart && goals > 0) candidates.add(new int[]{e, from, size});
+            }
+        }
+        candidates.sort((a, b) -> a[2] - b[2]);
+        BitBoard taken = new BitBoard(n);
+        for (int[] c : candidates) {
+            blocked.clear();
+            blocked.set(c[0]);
+            int size = flood(c[1], new BitBoard(n), blocked, queue, n);
+            boolean overlaps = taken.get(c[0]);
+            for (int k = 0; k < size; k++) overlaps |= taken.get(queue[k]);
+            if (overlaps) continue;
+            Room room = room(c[0], Arrays.copyOf(queue, size));
+            if (room == null) continue;
+            taken.set(c[0]);
+            for (int p : room.squares) taken.set(p);
+            rooms.add(room);
+            entranceOf[c[0]] = (byte) rooms.size();
+            if (rooms.size() == Byte.MAX_VALUE) break;
+        }
+    }
+
+    // Fill order and push scripts of the room 'squares' behind 'entrance', null if not even its first goal can be
+    // scripted. The order stops early at the first goal no box can be brought to.
+    private Room room(int entrance, int[] squares) {
+        int size = squares.length;
+        // Local indices: room squares, then the entrance; -1 outside
+        int[] local = new int[wall.length], cells = Arrays.copyOf(squares, size + 1);
+        Arrays.fill(local, -1);
+        for (int c = 0; c < size; c++) local[squares[c]] = c;
+        local[entrance] = size;
+        cells[size] = entrance;
+        List<Integer> remaining = new ArrayList<>();
+        for (int p : squares) if (goal[p]) remaining.add(p);
+        boolean[] placed = new boolean[size + 1];
+        int[] order = new int[remaining.size()];
+        List<int[][]> scripts = new ArrayList<>();
+        while (!remaining.isEmpty()) {
+            int[] dist = walk(cells, local, placed);
+            remaining.sort((a, b) -> dist[local[b]] - dist[local[a]]);
+            int[][] byDir = null;
+            for (int g : remaining) {
+                placed[local[g]] = true;
+                boolean connected = connected(walk(cells, local, placed), placed);
+                placed[local[g]] = false;
+                if (!connected) continue;
+                byDir = new int[4][];
+                boolean any = false;
+                for (int i = 0; i < 4; i++) {
+                    int outside = entrance - step[i], inside = entrance + step[i];
+                    if (wall[outside] || local[outside] >= 0 || local[inside] < 0 || local[inside] == size) continue;
+                    byDir[i] = pushScript(cells, local, placed, i, local[g]);
+                    any |= byDir[i] != null;
+                }
+                if (any) {
+                    order[scripts.size()] = g;
+                    break;
+                }
+                byDir = null;
+            }
+            if (byDir == null) break;
+            placed[local[order[scripts.size()]]] = true;
+            remaining.remove((Integer) order[scripts.size()]);
+            scripts.add(byDir);
+        }
+        if (scripts.isEmpty()) return null;
+        return new Room(entrance, squares, order, scripts.toArray(new int[0][][]));
+    }
+
+    // Walking distances from the entrance over the free room squares (local indices), -1 where unreachable
+    private int[] walk(int[] cells, int[] local, boolean[] placed) {
+        int entrance = cells.length - 1;
+        int[] dist = new int[cells.length], queue = new int[cells.length];
+        Arrays.fill(dist, -1);
+        int head = 0, tail = 0;
+        queue[tail++] = entrance;
+        dist[entrance] = 0;
+        while (head < tail) {
+            int c = queue[head++];
+            for (int i = 0; i < 4; i++) {
+                int next = local[cells[c] + step[i]];
+                if (next < 0 || placed[next] || dist[next] >= 0) continue;
+                dist[next] = dist[c] + 1;
+                queue[tail++] = next;
+            }
+        }
+        return dist;
+    }
+
+    // TRUE if every free room square is reachable from the entrance, so the player can leave and boxes enter
+    private boolean connected(int[] dist, boolean[] placed) {
+        for (int c = 0; c < dist.length; c++) if (!placed[c] && dist[c] < 0) return false;
+        return true;
+    }
+
+    // Pushes taking a box entering the room in 'dir' to local square 'target', placed goals acting as walls, found by
+    // BFS over box and player squares (fewest steps). Null if the target cannot be reached.
+    private int[] pushScript(int[] cells, int[] local, boolean[] placed, int dir, int target) {
+        int m = cells.length, entrance = m - 1;
+        // The box is on the entrance with the player outside: the first push into the room is forced
+        int first = local[cells[entrance] + step[dir]];
+        if (placed[first]) return null;
+        int[] parent = new int[m * m], queue = new int[m * m];
+        Arrays.fill(parent, -2);
+        int head = 0, tail = 0, found = first == target ? first * m + entrance : -1;
+        parent[first * m + entrance] = -1;
+        queue[tail++] = first * m + entrance;
+        while (head < tail && found < 0) {
+            int s = queue[head++], box = s / m, player = s % m;
+            for (int i = 0; i < 4 && found < 0; i++) {
+                int next = local[cells[player] + step[i]];
+                if (next < 0 || placed[next]) continue;
+                int state = box * m + next;
+                if (next == box) {
+                    int beyond = local[cells[box] + step[i]];
+                    if (beyond < 0 || beyond == entrance || placed[beyond] || dead[cells[beyond]]) continue;
+                    state = beyond * m + box;
+                }
+                if (parent[state] != -2) continue;
+                parent[state] = s;
+                queue[tail++] = state;
+                if (state / m == target) found = state;
+            }
+        }
+        if (found < 0) return null;
+        List<Integer> script = new ArrayList<>();
+        for (int s = found; parent[s] >= 0; s = parent[s]) {
+            int from = parent[s] / m, to = s / m, d = 0;
+            if (from == to) continue;
+            while (cells[from] + step[d] != cells[to]) d++;
+            script.add(0, cells[from] << 2 | d);
+        }
+        script.add(0, cells[entrance] << 2 | dir);
+        return script.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Flood fills from 'from' over non-wall squares not in 'blocked', marking 'area'; gives up past 'limit' squares.
+    // Returns the count (limit + 1 when given up), squares end up in queue[0, count).
+    private int flood(int from, BitBoard area, BitBoard blocked, int[] queue, int limit) {
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        area.set(from);
+        while (head < tail) {
+            int p = queue[head++];
+            for (int i = 0; i < 4; i++) {
+                int next = p + step[i];
+                if (wall[next] || blocked.get(next) || area.get(next)) continue;
+                if (tail == limit) return limit + 1;
+                area.set(next);
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.Arrays;
+
+import agents.search.LongHashSet;
+
+// Admissible heuristic: cost of a minimum-cost perfect matching between boxes and goals (Hungarian algorithm).
+// Row i of the cost matrix is box i of the box array, column j is goal j, entry = distance of the box to the goal.
+// Surplus goals are covered by zero-cost dummy rows, so the matrix is square and every column stays matched.
+// A solved matching (duals + assignment) is kept per box configuration in a small direct-mapped cache; when one box
+// moves, only its row changes, so the child is evaluated by re-augmenting that single row in O(n^2) instead of
+// solving from scratch in O(n^3). The child's matching goes into the cache as well, so expanding it later loads it
+// instead of solving again. Not thread-safe, use one instance per search thread.
+class MatchingHeuristic {
+    // Cost of an unreachable box/goal pair; a matching this expensive means no assignment exists (deadlock)
+    static final int UNREACHABLE = 1 << 16;
+    private static final int CACHE_SLOTS = 1 << 12;
+
+    // Distance of cell (x * height + y) to goal j
+    private final int[][] goalDists;
+    // Boxes, goals (== rows incl. dummies)
+    private final int height, n, m;
+    // Current solution (1-based as in the classic formulation, index 0 is the virtual row/column)
+    private final int[] u, v, p;
+    private final short[] boxes;
+    private int cost;
+    // Scratch for one augmentation phase and for evaluating children without touching the current solution
+    private final int[] minv, way, su, sv, sp;
+    private final boolean[] used;
+    // Cache slot layout: u[m + 1] v[m + 1] p[m + 1] cost, plus the box array it belongs to
+    private final long[] cacheKeys = new long[CACHE_SLOTS];
+    private final boolean[] cacheUsed = new boolean[CACHE_SLOTS];
+    private final int[] cacheData;
+    private final short[] cacheBoxes;
+    private final int stride;
+    // Statistics
+    long solves, incremental, cacheHits;
+
+    MatchingHeuristic(int[][] goalDists, int boxCount, int height) {
+        this.goalDists = goalDists;
+        this.height = height;
+        this.n = boxCount;
+        this.m = goalDists.length;
+        u = new int[m + 1];
+        v = new int[m + 1];
+        p = new int[m + 1];
+        boxes = new short[n];
+        minv = new int[m + 1];
+        way = new int[m + 1];
+        used = new boolean[m + 1];
+        su = new int[m + 1];
+        sv = new int[m + 1];
+        sp = new int[m + 1];
+        stride = 3 * (m + 1) + 1;
+        cacheData = new int[CACHE_SLOTS * stride];
+        cacheBoxes = new short[CACHE_SLOTS * n];
+    }
+
+    // Makes 'boxes' (with hash 'hashBox') the current configuration and returns its matching cost
+    int load(long hashBox, short[] boxes) {
+        int slot = slot(hashBox);
+        if (cacheUsed[slot] && cacheKeys[slot] == hashBox
+                && Arrays.equals(cacheBoxes, slot * n, slot * n + n, boxes, 0, n)) {
+            cacheHits++;
+            int o = slot * stride;
+            System.arraycopy(cacheData, o, u, 0, m + 1);
+            System.arraycopy(cacheData, o + m + 1, v, 0, m + 1);
+            System.arraycopy(cacheData, o + 2 * (m + 1), p, 0, m + 1);
+            cost = cacheData[o + stride - 1];
+            System.arraycopy(boxes, 0, this.boxes, 0, n);
+            return cost;
+        }
+        solve(boxes);
+        store(slot, hashBox, u, v, p, cost);
+        return cost;
+    }
+
+    // Matching cost of the current configuration with box 'box' moved to [x, y], the child configuration hashing to
+    // 'hashBox'; the current solution is kept and the child's is cached
+    int moved(int box, int x, int y, long hashBox) {
+        incremental++;
+        System.arraycopy(u, 0, su, 0, m + 1);
+        System.arraycopy(v, 0, sv, 0, m + 1);
+        System.arraycopy(p, 0, sp, 0, m + 1);
+        int row = box + 1, cell = x * height + y;
+        // Drop the moved box from the matching and restore dual feasibility of its row
+        int best = Integer.MAX_VALUE;
+        for (int j = 1; j <= m; j++) {
+            if (sp[j] == row) sp[j] = 0;
+            best = Math.min(best, cost(cell, j) - sv[j]);
+        }
+        su[row] = best;
+        augment(row, su, sv, sp, box, cell);
+        int res = 0;
+        for (int j = 1; j <= m; j++)
+            if (sp[j] <= n) res += sp[j] == row ? cost(cell, j) : cost(cellOf(this.boxes[sp[j] - 1]), j);
+        if (res < UNREACHABLE) {
+            int slot = slot(hashBox);
+            store(slot, hashBox, su, sv, sp, res);
+            cacheBoxes[slot * n + box] = (short) ((x & 0xFF) | (y & 0xFF) << 8);
+        }
+        return res;
+    }
+
+    private int slot(long hashBox) {
+        return (int) LongHashSet.mix(hashBox) & (CACHE_SLOTS - 1);
+    }
+
+    // Caches a solution of the current box array under 'hashBox'
+    private void store(int slot, long hashBox, int[] u, int[] v, int[] p, int cost) {
+        cacheUsed[slot] = true;
+        cacheKeys[slot] = hashBox;
+        int o = slot * stride;
+        System.arraycopy(u, 0, cacheData, o, m + 1);
+        System.arraycopy(v, 0, cacheData, o + m + 1, m + 1);
+        System.arraycopy(p, 0, cacheData, o + 2 * (m + 1), m + 1);
+        cacheData[o + stride - 1] = cost;
+        System.arraycopy(boxes, 0, cacheBoxes, slot * n, n);
+    }
+
+    // Solves the assignment from scratch
+    int solve(short[] boxes) {
+        solves++;
+        System.arraycopy(boxes, 0, this.boxes, 0, n);
+        Arrays.fill(u, 0);
+        Arrays.fill(v, 0);
+        Arrays.fill(p, 0);
+        for (int i = 1; i <= m; i++) augment(i, u, v, p, -1, 0);
+        cost = 0;
+        for (int j = 1; j <= m; j++) if (p[j] <= n) cost += cost(cellOf(boxes[p[j] - 1]), j);
+        return cost;
+    }
+
+    // One Hungarian phase: matches free row 'row' along a shortest augmenting path over reduced costs.
+    // Row 'overrideRow' (0-based, -1 for none) is evaluated at 'overrideCell' instead of its box position.
+    private void augment(int row, int[] u, int[] v, int[] p, int overrideRow, int overrideCell) {
+        p[0] = row;
+        int j0 = 0;
+        Arrays.fill(minv, Integer.MAX_VALUE);
+        Arrays.fill(used, false);
+        do {
+            used[j0] = true;
+            int i0 = p[j0], delta = Integer.MAX_VALUE, j1 = 0;
+            // Dummy rows (i0 > n) cost nothing
+            int cell = i0 > n ? -1 : i0 - 1 == overrideRow ? overrideCell : cellOf(boxes[i0 - 1]);
+            for (int j = 1; j <= m; j++) {
+                if (used[j]) continue;
+                int cur = (cell < 0 ? 0 : cost(cell, j)) - u[i0] - v[j];
+                if (cur < minv[j]) {
+                    minv[j] = cur;
+                    way[j] = j0;
+                }
+                if (minv[j] < delta) {
+                    delta = minv[j];
+                    j1 = j;
+                }
+            }
+            for (int j = 0; j <= m; j++) {
+                if (used[j]) {
+                    u[p[j]] += delta;
+                    v[j] -= delta;
+                } else minv[j] -= delta;
+            }
+            j0 = j1;
+        } while (p[j0] != 0);
+        do {
+            int j1 = way[j0];
+            p[j0] = p[j1];
+            j0 = j1;
+        } while (j0 != 0);
+    }
+
+    private int cost(int cell, int goal) {
+        int d = goalDists[goal - 1][cell];
+        return d == Integer.MAX_VALUE ? UNREACHABLE : d;
+    }
+
+    private int cellOf(short b) {
+        return (b & 0xFF) * height + ((b >> 8) & 0xFF);
+    }
+}
@@ -1,22 +1,32 @@
 import static java.lang.System.out;
 
-import java.util.ArrayDeque;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Random;
 import java.util.stream.Collectors;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 import agents.ArtificialAgent;
+import agents.search.BitBoard;
+import agents.search.BucketQueue;
+import agents.search.IntBinaryHeap;
+import agents.search.IntPriorityQueue;
+import agents.search.LongHashSet;
+import agents.search.NodeArena;
+import agents.search.TranspositionTable;
+import agents.search.VerifiedStateSet;
+import agents.search.VerdictCache;
+import game.Deadline;
+import game.SearchMetrics;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 import game.board.slim.BoardSlim;
 import game.board.slim.STile;
+import utils.SolutionStore;
 
 
 public class MyAgent extends ArtificialAgent {
@@ -24,39 +34,189 @@ public class MyAgent extends ArtificialAgent {
     protected static BoardSlim board;
     // Array for walls
     protected static boolean[][] walls;
-    // Array containing distance between tile and closest goal, and helper dirs array
+    // Pushes needed to get a box from a tile to the closest goal (PushDistances), and helper dirs array
     protected static int[][] minDists;
+    // Pushes from every tile (index x * height + y) to each goal, in goal order
+    static int[][] goalDists;
     // Dir helper for picking directions cleanly
     protected static int[] dirs = new int[]{-1, 0, 1, 0};
+    // Directions in EDirection index order, so a 2-bit index maps back to the action
+    protected static final EDirection[] dirList = {EDirection.UP, EDirection.RIGHT, EDirection.DOWN, EDirection.LEFT};
+    // Generous bound of states stored per millisecond of search, for sizing visited sets by the time left
+    static final int STATES_PER_MILLI = 1000;
     // Counter of searched nodes
     protected int searchedNodes;
+    // Time limit and cancellation of the running search
+    Deadline deadline = Deadline.none();
     // Goal positions
-    private List<Point> goals;
+    List<Point> goals;
     // Composition with DeadSquareDetector
-    private DeadSquareDetector dsd;
-    // Zobrist hashes -> Random Long for each position used for state hashing
-    private static long[][][] zobrist_hashes;
+    DeadSquareDetector dsd;
+    // Tunnel and goal room analysis, null unless macro pushes are enabled
+    Macros macros;
+    // Zobrist hashes -> Random Long for each position used for state hashing, seeded per level (LevelTables)
+    static long[][][] zobrist_hashes;
+    // Open list implementation used by A*, overridable with -Dmyagent.openlist=HEAP|BUCKET
+    protected OpenList openList = OpenList.valueOf(System.getProperty("myagent.openlist", "BUCKET"));
+    // Visited set sizing and placement, overridable with -Dmyagent.visited.expected=<n> and -Dmyagent.visited.offheap
+    protected int visitedExpected = Integer.getInteger("myagent.visited.expected", 1 << 21);
+    protected boolean visitedOffHeap = Boolean.getBoolean("myagent.visited.offheap");
+    // Verified states for certification runs, enabled with -Dmyagent.visited.verify: the single-threaded exact MOVES
+    // search confirms hash matches against stored box positions (VerifiedStateSet) and deadlock verdicts are not
+    // cached by hash; it runs in place of any other engine, HDA* or ARA*, as only it verifies states
+    protected boolean verifyStates = Boolean.getBoolean("myagent.visited.verify");
+    // Search engine, overridable with -Dmyagent.engine=MOVES|PUSHES|IDA|BIDIRECTIONAL|EXTERNAL
+    protected Engine engine = Engine.valueOf(System.getProperty("myagent.engine", "MOVES"));
+    // Heuristic, overridable with -Dmyagent.heuristic=CLOSEST|MATCHING
+    protected Heuristic heuristicType = Heuristic.valueOf(System.getProperty("myagent.heuristic", "CLOSEST"));
+    // Transposition table entries of the IDA engine (13 bytes each), overridable with -Dmyagent.tt.entries=<n>
+    protected int ttEntries = Integer.getInteger("myagent.tt.entries", TranspositionTable.DEFAULT_CAPACITY);
+    // Temp directory of the EXTERNAL engine and the states it buffers in memory before spilling them (8 bytes per 4
+    // boxes each), overridable with -Dmyagent.external.dir=<path> and -Dmyagent.external.buffer=<n>
+    protected String externalDir = System.getProperty("myagent.external.dir", System.getProperty("java.io.tmpdir"));
+    protected int externalBuffer = Integer.getInteger("myagent.external.buffer", 1 << 22);
+    // Directory caching the push analysis of every level across runs (LevelTables), enabled with
+    // -Dmyagent.cache.dir=<path>
+    protected String cacheDir = System.getProperty("myagent.cache.dir");
+    // Directory of the solution store (utils.SolutionStore) answered from before searching and extended after,
+    // enabled with -Dmyagent.solutions=<path>
+    protected String solutionDir = System.getProperty("myagent.solutions");
+    // Anytime search (AraStar) when solutions need not be optimal: initial weight (1 disables it), factor its excess over
+    // 1 shrinks by per pass and time spent improving the first solution from when it is found (never past the game's
+    // deadline), overridable with -Dmyagent.anytime.weight=<w>, -Dmyagent.anytime.decay=<d> and
+    // -Dmyagent.anytime.millis=<ms>
+    protected double anytimeWeight = Double.parseDouble(System.getProperty("myagent.anytime.weight", "50"));
+    protected double anytimeDecay = Double.parseDouble(System.getProperty("myagent.anytime.decay", "0.5"));
+    protected long anytimeMillis = Long.getLong("myagent.anytime.millis", 1000);
+    // Worker threads, more than 1 runs hash-distributed parallel A* (HdaStar) in place of the MOVES search,
+    // overridable with -Dmyagent.threads=<n>; HDA* ignores myagent.macros and is not used with
+    // myagent.visited.verify
+    protected int threads = Integer.getInteger("myagent.threads", 1);
+    // Entries of each deadlock verdict cache (9 bytes each), overridable with -Dmyagent.deadlock.cache=<n>
+    protected int deadlockCacheEntries = Integer.getInteger("myagent.deadlock.cache", VerdictCache.DEFAULT_CAPACITY);
+    // PI-corral deadlock detection after pushes, can be disabled with -Dmyagent.corral=false
+    protected boolean corralDetection = Boolean.parseBoolean(System.getProperty("myagent.corral", "true"));
+    // Tunnel macro pushes (MOVES, both exact and ARA, and PUSHES) and goal room packing (PUSHES) as single edges,
+    // enabled with -Dmyagent.macros; solutions are then no longer guaranteed optimal
+    protected boolean macroMoves = Boolean.getBoolean("myagent.macros");
+    // Time kept back from the game's deadline to play the plan out; searches stop this much earlier and return their
+    // best effort (ARA: the incumbent, or a partial plan towards the state closest to the goals), overridable with
+    // -Dmyagent.deadline.reserve=<ms>
+    protected long deadlineReserve = Long.getLong("myagent.deadline.reserve", 50);
+
+    public enum Engine {
+        // A* over single player steps, move-optimal
+        MOVES,
+        // A* over pushes with normalized player regions (PushSearch), push-optimal
+        PUSHES,
+        // Iterative deepening A* with a fixed-size transposition table (IdaStar), move-optimal in bounded memory
+        IDA,
+        // Forward push search meeting a backward pull search from the goals (BidirectionalSearch), push-optimal
+        BIDIRECTIONAL,
+        // A* with delayed duplicate detection over sorted files on disk (ExternalSearch), move-optimal beyond the heap
+        EXTERNAL
+    }
+
+    public enum OpenList {
+        // Binary heap ordered by f, arbitrary tie-breaking
+        HEAP,
+        // Bucket queue indexed by f, LIFO within a bucket
+        BUCKET
+    }
+
+    public enum Heuristic {
+        // Sum of distances of every box to its closest goal
+        CLOSEST,
+        // Minimum-cost perfect matching of boxes to goals (MatchingHeuristic)
+        MATCHING
+    }
 
     @Override
     protected List<EDirection> think(BoardCompact origBoard) {
+        return think(origBoard, Deadline.none());
+    }
+
+    @Override
+    protected List<EDirection> think(BoardCompact origBoard, Deadline deadline) {
+        this.deadline = deadline;
+        // Only the reserve left (after a partial plan was played out), searching again cannot finish in time; the
+        // empty plan idles the agent until the deadline
+        if (outOfTime()) return new ArrayList<>();
+        long thinkStartMillis = System.currentTimeMillis(), thinkStartCpu = cpuNanos();
+        SolutionStore store = solutionDir == null ? null : SolutionStore.open(new File(solutionDir));
+        List<EDirection> stored = store == null ? null : store.lookup(origBoard, optimal);
+        if (stored != null) {
+            metrics = new SearchMetrics();
+            metrics.engine = "STORE";
+            metrics.solutionLength = stored.size();
+            metrics.wallMillis = System.currentTimeMillis() - thinkStartMillis;
+            metrics.cpuMillis = (cpuNanos() - thinkStartCpu) / 1_000_000;
+            if (verbose) out.printf("Solution store: %d steps\n", stored.size());
+            return stored;
+        }
+        List<EDirection> result = search(prepare(origBoard, cacheDir, verbose), deadline);
+        if (store != null && result != null) store.record(origBoard, result, optimal && moveOptimal());
+        metrics.wallMillis = System.currentTimeMillis() - thinkStartMillis;
+        metrics.cpuMillis = (cpuNanos() - thinkStartCpu) / 1_000_000;
+        if (verbose) out.println("Metrics: " + metrics.toJson());
+        // Stopped or out of time rather than exhausted: the empty plan idles the agent so the game reports the timeout
+        if (result == null && cancelled()) return new ArrayList<>();
+        return result;
+    }
+
+    // Sets up the level shared by all searches on it: the board and the walls, Zobrist keys and the push distances of
+    // a lone box, which feed both the heuristic and the dead squares. The static fields are only read while searching
+    static LevelTables prepare(BoardCompact origBoard, String cacheDir, boolean verbose) {
         board = origBoard.makeBoardSlim();
+        LevelTables tables = LevelTables.of(board, findEntities(board, STile.PLACE_FLAG), cacheDir);
+        if (verbose) out.println("Level tables: " + tables);
+        walls = tables.walls;
+        zobrist_hashes = tables.zobrist;
+        minDists = tables.minDists;
+        goalDists = tables.goalDists;
+        return tables;
+    }
+
+    // Runs the configured engine on the prepared level within 'deadline' with state of its own (deadlock caches,
+    // macros, counters), so several agents may search the same level concurrently
+    List<EDirection> search(LevelTables tables, Deadline deadline) {
+        this.deadline = deadline;
+        metrics = new SearchMetrics();
         searchedNodes = 0;
         goals = findEntities(board, STile.PLACE_FLAG);
-        dsd = new DeadSquareDetector(board);
-        // Initialize Zobrist hashtable, 0 -> boxes, 1 -> player
-        zobrist_hashes = new long[2][board.width()][board.height()];
-        walls = new boolean[board.width()][board.height()];
-        Random rand = new Random();
-        for (int i = 0; i < board.width(); i++)
-            for (int j = 0; j < board.height(); j++) {
-                if (STile.isWall(board.tiles[i][j])) walls[i][j] = true;
-                zobrist_hashes[0][i][j] = rand.nextLong();
-                zobrist_hashes[1][i][j] = rand.nextLong();
-            }
-        calculateMinDistTable();
+        dsd = new DeadSquareDetector(tables.dead, verifyStates ? 0 : deadlockCacheEntries);
+        macros = macroMoves ? new Macros(tables.dead) : null;
+        if (verbose && macros != null)
+            out.printf("Macros: %d tunnel squares, %d goal rooms\n", macros.tunnelSquares, macros.rooms.size());
         long searchStartMillis = System.currentTimeMillis();
-        List<EDirection> result = a_star();
+        List<EDirection> result;
+        metrics.engine = engine.name();
+        if (verifyStates) {
+            String configured = engine != Engine.MOVES ? engine.name() : threads > 1 ? "HDA"
+                    : !optimal && anytimeWeight > 1 ? "ARA" : null;
+            if (verbose && configured != null)
+                out.println("Verified states: running the single-threaded MOVES search instead of " + configured);
+            metrics.engine = Engine.MOVES.name();
+            result = a_star();
+        } else if (engine == Engine.PUSHES) result = new PushSearch(this).search();
+        else if (engine == Engine.BIDIRECTIONAL) result = new BidirectionalSearch(this).search();
+        else if (engine == Engine.IDA) result = new IdaStar(this, ttEntries).search();
+        else if (engine == Engine.EXTERNAL) result = new ExternalSearch(this, externalDir, externalBuffer).search();
+        else if (threads > 1) {
+            metrics.engine = "HDA";
+            result = new HdaStar(this, threads).search();
+        }
+        // Anytime search unless move-optimal solutions are required
+        else if (!optimal && anytimeWeight > 1) {
+            metrics.engine = "ARA";
+            result = new AraStar(this, anytimeWeight, anytimeDecay, anytimeMillis).search();
+        } else result = a_star();
         long searchTime = System.currentTimeMillis() - searchStartMillis;
+        metrics.expanded = searchedNodes;
+        metrics.simplePrunes = dsd.skipped[0];
+        metrics.freezePrunes = dsd.skipped[1];
+        metrics.corralPrunes = dsd.skipped[2];
+        metrics.solutionLength = result == null ? -1 : result.size();
         if (verbose) {
             out.println("Nodes visited: " + searchedNodes);
             out.printf("Performance: %.1f nodes/sec\n",
@@ -65,88 +225,180 @@ public class MyAgent extends ArtificialAgent {
         return result;
     }
 
+    // TRUE if the configured search returns move-optimal plans when optimality is required
+    boolean moveOptimal() {
+        return !macroMoves
+               && (verifyStates || engine == Engine.MOVES || engine == Engine.IDA || engine == Engine.EXTERNAL);
+    }
+
+    // CPU time of the calling thread (search workers of HdaStar are not included), 0 if unsupported
+    static long cpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    // Counters of the running search, for engines outside the agents package
+    SearchMetrics metrics() {
+        return metrics;
+    }
+
     private List<EDirection> a_star() {
         // Initialize
         boolean completed = false;
-        long completedHash = goals.stream().map(g -> zobrist_hashes[0][g.x][g.y]).reduce(0L, (a, e) -> a ^ e);
-        short[] boxes = new short[board.boxCount];
-        int startH = 0, idx = 0;
-        for (Point box : findEntities(board, STile.BOX_FLAG)) {
-            boxes[idx++] = (short) ((box.x & 0xFF) | (box.y & 0xFF) << 8);
-            startH += minDists[box.x][box.y];
-        }
-        // Action placeholder, is ignored anyway
-        State start = new State(boxes, null, EDirection.NONE, startH, board.playerX, board.playerY);
+        long completedHash = completedHash();
+        short[] boxes = packBoxes(board);
+        MatchingHeuristic matcher = newMatcher();
+        long heuristicStart = System.nanoTime();
+        int startH = matcher != null ? matcher.solve(boxes) : heuristic(boxes);
+        metrics.heuristicNanos += System.nanoTime() - heuristicStart;
+        long startHashBox = hashBoxes(boxes);
+        // Nodes live in a primitive arena and are referred to by int handles
+        NodeArena nodes = new NodeArena(board.boxCount, verifyStates);
+        // Direction placeholder, is ignored anyway
+        int start = nodes.add(NodeArena.NONE, 0, (board.playerX & 0xFF) | (board.playerY & 0xFF) << 8, startH,
+                nodes.intern(boxes, startHashBox));
+        int h = board.height();
         // Heuristic is consistent + uniform costs -> first reach is optimal (set sufficient)
-        LongHashMap vis = new LongHashMap();
-        vis.put(start.hashFull);
-        PriorityQueue<State> q = new PriorityQueue<>(List.of(start));
+        // Either hashes only, or hashes confirmed against the stored states
+        LongHashSet vis = verifyStates ? null : new LongHashSet(visitedExpected(), visitedOffHeap);
+        VerifiedStateSet verified = verifyStates ? new VerifiedStateSet(nodes, h, visitedExpected()) : null;
+        long startHashFull = startHashBox ^ zobrist_hashes[1][board.playerX][board.playerY];
+        if (verified != null) verified.add(startHashFull, start);
+        else vis.add(startHashFull);
+        IntPriorityQueue q = openList == OpenList.BUCKET ? new BucketQueue() : new IntBinaryHeap();
+        q.add(start, startH);
         // A*
-        State curr = null;
-        EDirection[] dirList = {EDirection.UP, EDirection.RIGHT, EDirection.DOWN, EDirection.LEFT};
+        int curr = NodeArena.NONE;
+        short[] currBoxes = new short[board.boxCount], nextBoxes = new short[board.boxCount];
+        // Box occupancy of the expanded node, index x * height + y
+        BitBoard occupied = new BitBoard(board.width() * h);
         while (!q.isEmpty()) {
-            curr = q.remove();
+            metrics.open(q.size());
+            curr = q.poll();
             searchedNodes++;
+            // Given up without a solution, the counters below are still recorded
+            if (cancelled()) break;
+            long currHashBox = nodes.hashBox(curr);
             // Guard clauses
-            completed = curr.hashBox == completedHash;
+            completed = currHashBox == completedHash;
+            if (completed && verifyStates) {
+                nodes.boxes(nodes.boxRef(curr), currBoxes);
+                completed = onGoals(currBoxes);
+            }
             // Heuristic is admissible - first goal reach is optimal
             if (completed) break;
+            int currRef = nodes.boxRef(curr), currF = nodes.f(curr);
+            // Matching cost of the current boxes, loaded on the first push
+            int currH = -1;
+            int playerX = nodes.player(curr) & 0xFF, playerY = nodes.player(curr) >> 8;
+            nodes.boxes(currRef, currBoxes);
+            occupy(currBoxes, occupied);
             for (int i = 0; i < 4; i++) {
                 EDirection dir = dirList[i];
-                int nextX = curr.playerX + dir.dX, nextY = curr.playerY + dir.dY;
+                int nextX = playerX + dir.dX, nextY = playerY + dir.dY;
                 // If there's a wall, skip direction
                 if (walls[nextX][nextY]) continue;
                 // If there's no box, we can move there
-                if (!boxAt(curr.boxes, nextX, nextY)) {
-                    long nextHashFull = curr.hashBox;
+                if (!occupied.get(nextX * h + nextY)) {
+                    long nextHashFull = currHashBox;
                     nextHashFull ^= zobrist_hashes[1][nextX][nextY];
+                    int nextPlayer = (nextX & 0xFF) | (nextY & 0xFF) << 8;
                     // Check if state visited
-                    if (vis.contains(nextHashFull)) continue;
-                    // SMove -> boxes unchanged -> redundant deadlock detection, box cloning, and heuristic recalculation
-                    State next = curr.copy(dir, curr.boxes, curr.hashBox, nextHashFull, nextX, nextY);
-                    vis.put(nextHashFull);
-                    q.add(next);
+                    if (verified != null ? verified.contains(nextHashFull, nextPlayer, occupied, -1, -1)
+                            : vis.contains(nextHashFull)) {
+                        metrics.duplicates++;
+                        continue;
+                    }
+                    // SMove -> boxes unchanged -> redundant deadlock detection, box copying, and heuristic recalculation
+                    metrics.generated++;
+                    int child = nodes.add(curr, i, nextPlayer, currF + 1, currRef);
+                    if (verified != null) verified.add(nextHashFull, child);
+                    else vis.add(nextHashFull);
+                    q.add(child, currF + 1);
                 }
                 // Possible candidate for pushing there
                 else {
                     int nextXX = nextX + dir.dX, nextYY = nextY + dir.dY;
                     // Future box position is not free (wall or box)
-                    if (walls[nextXX][nextYY] || boxAt(curr.boxes, nextXX, nextYY)) continue;
+                    if (walls[nextXX][nextYY] || occupied.get(nextXX * h + nextYY)) continue;
                     // Dead future box position
                     if (dsd.detectSimple(nextXX, nextYY)) continue;
+                    // Tunnel macro: the box goes on to the tunnel's end with the player behind it, as one edge
+                    int pushes = 1, endX = nextX, endY = nextY;
+                    if (macros != null) {
+                        int more = macros.tunnel(occupied, nextX * h + nextY, i);
+                        pushes += more;
+                        endX += more * dir.dX;
+                        endY += more * dir.dY;
+                        nextXX += more * dir.dX;
+                        nextYY += more * dir.dY;
+                    }
                     // Update hashes separately for performance
-                    long nextHashFull = curr.hashBox;
+                    long nextHashFull = currHashBox;
                     nextHashFull ^= zobrist_hashes[0][nextX][nextY];
                     nextHashFull ^= zobrist_hashes[0][nextXX][nextYY];
                     long nextHashBox = nextHashFull;
-                    nextHashFull ^= zobrist_hashes[1][nextX][nextY];
+                    nextHashFull ^= zobrist_hashes[1][endX][endY];
+                    int nextPlayer = (endX & 0xFF) | (endY & 0xFF) << 8;
                     // Check if state visited
-                    if (vis.contains(nextHashFull)) continue;
-                    // Copy and update boxes
-                    short[] nextBoxes = Arrays.copyOf(curr.boxes, board.boxCount);
-                    for (int ib = 0; ib < nextBoxes.length; ib++) {
-                        short b = nextBoxes[ib];
-                        if (nextX == (b & 0xFF) && nextY == ((b >> 8) & 0xFF)) {
-                            nextBoxes[ib] = (short) ((nextXX & 0xFF) | (nextYY & 0xFF) << 8);
-                            break;
-                        }
+                    if (verified != null ? verified.contains(nextHashFull, nextPlayer, occupied, nextX * h + nextY,
+                            nextXX * h + nextYY) : vis.contains(nextHashFull)) {
+                        metrics.duplicates++;
+                        continue;
                     }
-                    // Check dynamic deadlock
-                    if (dsd.detectFreeze(nextBoxes, nextXX, nextYY, nextHashBox)) continue;
-                    State next = curr.copy(dir, nextBoxes, nextHashBox, nextHashFull, nextX, nextY);
+                    // Copy and update boxes
+                    System.arraycopy(currBoxes, 0, nextBoxes, 0, currBoxes.length);
+                    int movedBox = moveBox(nextBoxes, nextX, nextY, nextXX, nextYY);
+                    // Check dynamic deadlocks on the child occupancy
+                    occupied.move(nextX * h + nextY, nextXX * h + nextYY);
+                    boolean deadlock = dsd.detectFreeze(occupied, nextXX, nextYY, nextHashBox) || corralDetection
+                            && dsd.detectCorral(nextBoxes, occupied, endX, endY, nextXX, nextYY);
+                    occupied.move(nextXX * h + nextYY, nextX * h + nextY);
+                    if (deadlock) continue;
                     // Update heuristic
-                    next.f = next.f - minDists[nextX][nextY] + minDists[nextXX][nextYY];
-                    vis.put(nextHashFull);
-                    q.add(next);
+                    int nextF;
+                    if (matcher == null) nextF = currF + pushes - minDists[nextX][nextY] + minDists[nextXX][nextYY];
+                    else {
+                        heuristicStart = System.nanoTime();
+                        if (currH < 0) currH = matcher.load(currHashBox, currBoxes);
+                        int nextH = matcher.moved(movedBox, nextXX, nextYY, nextHashBox);
+                        metrics.heuristicNanos += System.nanoTime() - heuristicStart;
+                        // No perfect matching left -> deadlock
+                        if (nextH >= MatchingHeuristic.UNREACHABLE) continue;
+                        nextF = currF + pushes - currH + nextH;
+                    }
+                    metrics.generated++;
+                    int child = nodes.add(curr, i, nextPlayer, nextF, nodes.intern(nextBoxes, nextHashBox));
+                    if (verified != null) verified.add(nextHashFull, child);
+                    else vis.add(nextHashFull);
+                    q.add(child, nextF);
                 }
             }
         }
+        if (verified != null) metrics.visited(verified.size(), verified.loadFactor());
+        else metrics.visited(vis.size(), vis.loadFactor());
+        if (verbose) {
+            out.printf("Arena: %d nodes, %d box sets, %.1f MB\n",
+                    nodes.size(), nodes.boxSets(), nodes.memoryBytes() / 1048576.0);
+            out.println("Visited: " + (verified != null ? verified.stats() : vis.stats()));
+            if (dsd.freezeCache != null) out.println("Freeze cache: " + dsd.freezeCache.stats());
+            if (dsd.corrals != null)
+                out.printf("Corrals: %d checks, %d searches, %d deadlocks\n",
+                        dsd.corrals.checks, dsd.corrals.searches, dsd.corrals.deadlocks);
+            if (dsd.corralCache != null) out.println("Corral cache: " + dsd.corralCache.stats());
+            if (matcher != null)
+                out.printf("Matching: %d solves, %d incremental, %d cache hits\n",
+                        matcher.solves, matcher.incremental, matcher.cacheHits);
+        }
         // Backtracking to build action chain
-        if (curr == null || !completed) return null;
+        if (curr == NodeArena.NONE || !completed) return null;
         List<EDirection> actions = new LinkedList<>();
-        while (curr.parent != null) {
-            actions.add(0, curr.pa);
-            curr = curr.parent;
+        while (nodes.parent(curr) != NodeArena.NONE) {
+            // Tunnel macros span several steps in one direction
+            int from = nodes.player(nodes.parent(curr)), to = nodes.player(curr);
+            int steps = Math.abs((to & 0xFF) - (from & 0xFF)) + Math.abs((to >> 8) - (from >> 8));
+            for (int k = 0; k < steps; k++) actions.add(0, dirList[nodes.dir(curr)]);
+            curr = nodes.parent(curr);
         }
         if (verbose) {
             out.print(Arrays.stream(dsd.skipped).mapToObj(i -> i + " ").reduce("", String::concat));
@@ -155,141 +407,172 @@ public class MyAgent extends ArtificialAgent {
         return actions;
     }
 
-    private void calculateMinDistTable() {
-        minDists = new int[board.width()][board.height()];
-        for (int[] minDist : minDists) Arrays.fill(minDist, Integer.MAX_VALUE);
-        for (Point g : goals) {
-            int c = 0;
-            Queue<Point> q = new ArrayDeque<>(List.of(g));
-            List<Integer> vis = new ArrayList<>(List.of(g.x * board.height() + g.y));
-            while (true) {
-                Queue<Point> qq = new ArrayDeque<>();
-                while (!q.isEmpty()) {
-                    Point curr = q.remove();
-                    minDists[curr.x][curr.y] = Math.min(minDists[curr.x][curr.y], c);
-                    for (int i = 0; i < 4; i++) {
-                        Point next = new Point(curr.x + (dirs[i]), curr.y + dirs[(i + 1) % 4]);
-                        if (vis.contains(next.x * board.height() + next.y) || walls[next.x][next.y]) continue;
-                        vis.add(next.x * board.height() + next.y);
-                        qq.add(next);
-                    }
-                }
-                if (qq.isEmpty()) break;
-                q.addAll(qq);
-                c++;
-            }
-        }
+    // TRUE once the thinking thread was interrupted or the deadline cancelled, i.e. the game stopped the agent, or the
+    // time left is down to the reserve; engines poll it per expansion and give up, so an abandoned search does not
+    // keep running next to the following levels
+    boolean cancelled() {
+        return Thread.currentThread().isInterrupted() || deadline.isCancelled() || outOfTime();
     }
 
-    static class State implements Comparable<State> {
-        short[] boxes;
-        State parent;
-        EDirection pa;
-        int playerX, playerY, f;
-        long hashBox, hashFull;
-
-        public State(short[] boxes, State parent, EDirection pa, int f, int playerX, int playerY) {
-            this(boxes, parent, pa, f, playerX, playerY, 0L, 0L);
-            for (short b : boxes) this.hashBox ^= zobrist_hashes[0][b & 0xFF][(b >> 8) & 0xFF];
-            this.hashFull = this.hashBox;
-            this.hashFull ^= zobrist_hashes[1][playerX][playerY];
-        }
+    // TRUE once the time left is down to the reserve for playing the plan; searches return their best effort
+    boolean outOfTime() {
+        return deadline.isBounded() && deadline.remainingMillis() <= deadlineReserve;
+    }
 
-        public State(short[] boxes, State parent, EDirection pa, int f, int playerX, int playerY,
-                     long hashBox, long hashFull) {
-            this.boxes = boxes;
-            this.parent = parent;
-            this.pa = pa;
-            this.f = f;
-            this.playerX = playerX;
-            this.playerY = playerY;
-            this.hashBox = hashBox;
-            this.hashFull = hashFull;
-        }
+    // Expected visited states, capped by what the time left allows for
+    int visitedExpected() {
+        if (!deadline.isBounded()) return visitedExpected;
+        long affordable = Math.max(1 << 16, (deadline.remainingMillis() - deadlineReserve) * STATES_PER_MILLI);
+        return (int) Math.min(visitedExpected, affordable);
+    }
 
-        public State copy(EDirection dir, short[] boxes, long hashBox, long hashFull, int px, int py) {
-            return new State(boxes, this, dir, f + 1, px, py, hashBox, hashFull);
-        }
+    // Verbose flag for search engines outside the agents package
+    boolean verbose() {
+        return verbose;
+    }
+
+    // Box hash of the solved configuration (all goals covered)
+    long completedHash() {
+        return goals.stream().map(g -> zobrist_hashes[0][g.x][g.y]).reduce(0L, (a, e) -> a ^ e);
+    }
+
+    // Boxes of a board packed as (x | y << 8)
+    static short[] packBoxes(BoardSlim board) {
+        short[] boxes = new short[board.boxCount];
+        int idx = 0;
+        for (Point box : findEntities(board, STile.BOX_FLAG)) boxes[idx++] = (short) ((box.x & 0xFF) | (box.y & 0xFF) << 8);
+        return boxes;
+    }
+
+    // TRUE if every box is on a goal
+    static boolean onGoals(short[] boxes) {
+        for (short b : boxes)
+            if ((board.tiles[b & 0xFF][(b >> 8) & 0xFF] & STile.PLACE_FLAG) == 0) return false;
+        return true;
+    }
+
+    static long hashBoxes(short[] boxes) {
+        long hash = 0;
+        for (short b : boxes) hash ^= zobrist_hashes[0][b & 0xFF][(b >> 8) & 0xFF];
+        return hash;
+    }
+
+    static int heuristic(short[] boxes) {
+        int h = 0;
+        for (short b : boxes) h += minDists[b & 0xFF][(b >> 8) & 0xFF];
+        return h;
+    }
+
+    // Matching heuristic for one search thread, or null when the closest-goal sum is used
+    MatchingHeuristic newMatcher() {
+        if (heuristicType != Heuristic.MATCHING || board.boxCount > goals.size()) return null;
+        return new MatchingHeuristic(goalDists, board.boxCount, board.height());
+    }
 
-        public int compareTo(State o) {
-            return Integer.compare(this.f, o.f);
+    // Loads the occupancy of 'boxes' into 'occupied' (index x * height + y)
+    static void occupy(short[] boxes, BitBoard occupied) {
+        occupied.clear();
+        for (short b : boxes) occupied.set((b & 0xFF) * board.height() + ((b >> 8) & 0xFF));
+    }
+
+    // Moves the box at [x, y] to [xx, yy] in place, returns its index
+    static int moveBox(short[] boxes, int x, int y, int xx, int yy) {
+        for (int ib = 0; ib < boxes.length; ib++) {
+            short b = boxes[ib];
+            if (x == (b & 0xFF) && y == ((b >> 8) & 0xFF)) {
+                boxes[ib] = (short) ((xx & 0xFF) | (yy & 0xFF) << 8);
+                return ib;
+            }
         }
+        return -1;
     }
 
     // Class for finding dead squares
     static class DeadSquareDetector {
         // Static dead square positions
         boolean[][] dead;
-        // Skipped states counter for different deadlock types, and directions helper (used for flooding)
-        int[] skipped = new int[]{0, 0};
-        // Caches for freeze and corral deadlocks
-        Map<Long, Boolean> freezeCache = new HashMap<>();
-
-        public DeadSquareDetector() {}
+        // Skipped states counter for different deadlock types (simple, freeze, corral)
+        int[] skipped = new int[]{0, 0, 0};
+        // Bounded caches for freeze and corral deadlocks, the latter keyed by corral boxes + player region; null when
+        // created with no cache entries, then every check is computed
+        VerdictCache freezeCache, corralCache;
+        // Corral analysis and the box chain of the running freeze check, created on first use
+        CorralDetector corrals;
+        private BitBoard path;
+
+        public DeadSquareDetector() {
+            this(null, VerdictCache.DEFAULT_CAPACITY);
+        }
 
         public DeadSquareDetector(BoardSlim board) {
+            this();
             this.dead = this.detect(board);
         }
 
+        public DeadSquareDetector(boolean[][] dead, int cacheEntries) {
+            this.dead = dead;
+            if (cacheEntries <= 0) return;
+            this.freezeCache = new VerdictCache(cacheEntries);
+            this.corralCache = new VerdictCache(cacheEntries);
+        }
+
+        // Detector sharing the static dead squares, with its own caches and counters (one per search thread)
+        DeadSquareDetector fork() {
+            return new DeadSquareDetector(dead, freezeCache == null ? 0 : freezeCache.capacity());
+        }
+
         public boolean[][] detect(BoardCompact board) {
             return this.detect(board.makeBoardSlim());
         }
 
-        // Detect simple deadlocks (static) - tiles from which a box cannot move, independent of other boxes
+        // Detect simple deadlocks (static) - tiles from which a box cannot be pushed to any goal, independent of other
+        // boxes, respecting the side the player has to push from
         public boolean[][] detect(BoardSlim board) {
-            boolean[][] res = new boolean[board.width()][board.height()];
-            // Flood fill for dead squares, starting from each goal
-            for (Point goal : findEntities(board, STile.PLACE_FLAG)) pull(board, res, goal.x, goal.y);
-            // Invert result (not visited -> dead)
-            for (int i = 0; i < board.width(); i++) for (int j = 0; j < board.height(); j++) res[i][j] ^= true;
-            return res;
+            return new PushDistances(board).dead;
         }
 
-        private boolean detectSimple(int x, int y) {
+        boolean detectSimple(int x, int y) {
             boolean res = dead[x][y];
             if (res) this.skipped[0]++;
             return res;
         }
 
-        private void pull(BoardSlim board, boolean[][] res, int x, int y) {
-            res[x][y] = true;
-            for (int i = 0; i < 4; i++) {
-                int nx = x + dirs[i], ny = y + dirs[(i + 1) % 4];
-                // Check bounds
-                if (nx < 1 || ny < 1 || nx > res.length - 2 || ny > res[0].length - 2) continue;
-                // Check that it can be pulled (two non-walls in the direction)
-                if (res[nx][ny] || STile.isWall(board.tiles[nx][ny]) ||
-                        STile.isWall(board.tiles[nx + dirs[i]][ny + dirs[(i + 1) % 4]])) continue;
-                pull(board, res, nx, ny);
-            }
+        // Detect PI-corral deadlocks (dynamic) - the area behind the box pushed to [x, y] cannot be solved
+        public boolean detectCorral(short[] boxes, BitBoard occupied, int playerX, int playerY, int x, int y) {
+            if (corrals == null) corrals = new CorralDetector(dead);
+            boolean res = corrals.deadlocked(boxes, occupied, playerX, playerY, x, y, corralCache);
+            if (res) this.skipped[2]++;
+            return res;
         }
 
         // Detect freeze deadlocks (dynamic) - tiles from which a box cannot move, depends on other boxes
-        public boolean detectFreeze(short[] boxes, int x, int y, long hash) {
+        public boolean detectFreeze(BitBoard boxes, int x, int y, long hash) {
             // Return cached config if possible
-            Boolean c = freezeCache.get(hash);
-            if (c != null) {
-                this.skipped[1]++;
-                return c;
+            int c = freezeCache == null ? VerdictCache.MISS : freezeCache.get(hash);
+            if (c != VerdictCache.MISS) {
+                if (c == 1) this.skipped[1]++;
+                return c == 1;
             }
             List<Integer> frozen = new ArrayList<>();
             // Get all frozen blocks in curr config
-            detectFreeze(boxes, x, y, frozen, new short[boxes.length], 0);
+            if (path == null) path = new BitBoard(board.width() * board.height());
+            detectFreeze(boxes, x, y, frozen, path);
             // If any frozen block is not on goal -> dead state
             boolean res = frozen.stream().anyMatch(b ->
                     (STile.PLACE_FLAG & board.tiles[b / board.height()][b % board.height()]) == 0);
             if (res) this.skipped[1]++;
-            freezeCache.put(hash, res);
+            if (freezeCache != null) freezeCache.put(hash, res);
             return res;
         }
 
-        private boolean detectFreeze(short[] boxes, int x, int y, List<Integer> f, short[] bs, int ii) {
+        private boolean detectFreeze(BitBoard boxes, int x, int y, List<Integer> f, BitBoard bs) {
+            int h = board.height();
             // Check if frozen in x- and y-axis
             boolean[] frozen = new boolean[2];
             for (int i = 0; i < 2; i++) {
                 int dx = x + dirs[i], dy = y + dirs[i + 1], ddx = x + dirs[i + 2], ddy = y + dirs[(i + 3) % 4];
-                // Check for an axis if there's 1 wall, or 2 dead states
-                frozen[i] = walls[dx][dy] || walls[ddx][ddy] || boxAt(bs, dx, dy) || boxAt(bs, ddx, ddy) ||
+                // Check for an axis if there's 1 wall (boxes on the current chain count as walls), or 2 dead states
+                frozen[i] = walls[dx][dy] || walls[ddx][ddy] || bs.get(dx * h + dy) || bs.get(ddx * h + ddy) ||
                         (dead[dx][dy] && dead[ddx][ddy]);
             }
             // If frozen from both axes - short-circuit guard
@@ -297,22 +580,23 @@ public class MyAgent extends ArtificialAgent {
                 f.add(x * board.height() + y);
                 return true;
             }
+            // Prevent circular check, only boxes on the current chain are marked
+            bs.set(x * h + y);
             for (int i = 0; i < 2; i++)
                 if (frozen[i]) {
-                    // Prevent circular check
-                    bs[ii++] = (short) ((x & 0xFF) | (y & 0xFF) << 8);
                     int dy = y + dirs[i], dx = x + dirs[i + 1];
                     // If box -> recursively check if next box is frozen
-                    if (boxAt(boxes, dx, dy) && !boxAt(bs, dx, dy))
-                        frozen[1 - i] = detectFreeze(boxes, dx, dy, f, bs, ii);
+                    if (boxes.get(dx * h + dy) && !bs.get(dx * h + dy))
+                        frozen[1 - i] = detectFreeze(boxes, dx, dy, f, bs);
                     // Short-circuit guard
                     if (frozen[1 - i]) break;
                     int ddy = y + dirs[i + 2], ddx = x + dirs[(i + 3) % 4];
-                    if (boxAt(boxes, ddx, ddy) && !boxAt(bs, ddx, ddy))
-                        frozen[1 - i] = detectFreeze(boxes, ddx, ddy, f, bs, ii);
+                    if (boxes.get(ddx * h + ddy) && !bs.get(ddx * h + ddy))
+                        frozen[1 - i] = detectFreeze(boxes, ddx, ddy, f, bs);
                     // Short-circuit guard
                     if (frozen[1 - i]) break;
                 }
+            bs.clear(x * h + y);
             // If frozen from both axes
             if (frozen[0] && frozen[1]) {
                 f.add(x * board.height() + y);
@@ -323,7 +607,7 @@ public class MyAgent extends ArtificialAgent {
     }
 
     // Helper for finding entities in a board (goals/boxes/walls/etc.)
-    private static List<Point> findEntities(BoardSlim board, byte flag) {
+    static List<Point> findEntities(BoardSlim board, byte flag) {
         List<Point> res = new ArrayList<>();
         for (int i = 1; i < board.width() - 1; i++)
             for (int j = 1; j < board.height() - 1; j++)
@@ -331,11 +615,6 @@ public class MyAgent extends ArtificialAgent {
         return res;
     }
 
-    private static boolean boxAt(short[] boxes, int x, int y) {
-        for (short b : boxes) if (x == (b & 0xFF) && y == ((b >> 8) & 0xFF)) return true;
-        return false;
-    }
-
     static public class Point {
         int x, y;
 
@@ -344,60 +623,4 @@ public class MyAgent extends ArtificialAgent {
             this.y = y;
         }
     }
-
-    static class LongHashMap {
-        private static final int DEFAULT_CAPACITY = 2_097_152;
-        private static final double LOAD_FACTOR = 0.8;
-
-        private long[] keys;
-        private boolean[] occupied;
-        private int size;
-
-        public LongHashMap() {
-            keys = new long[DEFAULT_CAPACITY];
-            occupied = new boolean[DEFAULT_CAPACITY];
-            size = 0;
-        }
-
-        private int hash(long key) {
-            return (int) ((key >>> 32) % keys.length);
-        }
-
-        private void resize() {
-            int newCapacity = keys.length * 2;
-            long[] newKeys = new long[newCapacity];
-            boolean[] newOccupied = new boolean[newCapacity];
-            for (int i = 0; i < keys.length; i++) {
-                if (occupied[i]) {
-                    int index = hash(keys[i]);
-                    while (newOccupied[index]) index = (index + 1) % newCapacity;
-                    newKeys[index] = keys[i];
-                    newOccupied[index] = true;
-                }
-            }
-            keys = newKeys;
-            occupied = newOccupied;
-        }
-
-        public void put(long key) {
-            if ((double) size / keys.length >= LOAD_FACTOR) resize();
-            int index = hash(key);
-            while (occupied[index]) {
-                if (keys[index] == key) return;
-                index = (index + 1) % keys.length;
-            }
-            keys[index] = key;
-            occupied[index] = true;
-            size++;
-        }
-
-        public boolean contains(long key) {
-            int index = hash(key);
-            while (occupied[index]) {
-                if (keys[index] == key) return true;
-                index = (index + 1) % keys.length;
-            }
-            return false;
-        }
-    }
-}
\ No newline at end of file
+}
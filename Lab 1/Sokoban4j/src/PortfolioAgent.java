@@ -0,0 +1,156 @@
+import static java.lang.System.out;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import agents.ArtificialAgent;
+import game.Deadline;
+import game.PlanVerifier;
+import game.SearchMetrics;
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+
+// Portfolio of searches racing on the same level, each on a thread of its own.
+// The level tables (MyAgent.prepare) are built once and only read by the members; each member is a MyAgent
+// configured for one strategy, with its own deadlock caches, macros and counters. The first plan that replays to a
+// solution wins, or with 'optimal' the first one of a move-optimal member; plans of the other members are kept as
+// a fallback, used if no optimal member succeeds. The losers are then interrupted, which the engines poll per
+// expansion, and joined before think() returns, so no member outlives the level it was started for. When the game
+// stops the agent, the interrupt of the thinking thread is passed on to all members the same way. Members search
+// within the game's deadline; a partial plan of one running out of time is returned only if no member solved the
+// level.
+public class PortfolioAgent extends ArtificialAgent {
+    // Strategies raced, overridable with -Dmyagent.portfolio=<strategy>,... where a strategy is an engine of MyAgent
+    // (MOVES being exact A*) or ARA for anytime weighted A* over moves; the other myagent.* options apply to every
+    // member, except that each runs on one thread
+    protected String[] strategies = System.getProperty("myagent.portfolio", "MOVES,ARA,PUSHES").split(",");
+    // Directory caching the push analysis of every level across runs (LevelTables), enabled with
+    // -Dmyagent.cache.dir=<path>
+    protected String cacheDir = System.getProperty("myagent.cache.dir");
+
+    @Override
+    protected List<EDirection> think(BoardCompact origBoard) {
+        return think(origBoard, Deadline.none());
+    }
+
+    @Override
+    protected List<EDirection> think(BoardCompact origBoard, Deadline deadline) {
+        long thinkStartMillis = System.currentTimeMillis();
+        LevelTables tables = MyAgent.prepare(origBoard, cacheDir, verbose);
+        BlockingQueue<Member> finished = new LinkedBlockingQueue<>();
+        List<Member> members = new ArrayList<>();
+        for (String strategy : strategies) members.add(new Member(strategy.trim(), tables, deadline, finished));
+        for (Member m : members) m.start();
+        PlanVerifier verifier = new PlanVerifier(origBoard);
+        Member winner = null, fallback = null, partial = null;
+        Throwable failure = null;
+        try {
+            for (int left = members.size(); left > 0 && winner == null; left--) {
+                Member m = finished.take();
+                if (verbose)
+                    out.printf("Portfolio: %s finished in %d ms, %s\n", m.strategy, m.wallMillis,
+                            m.failure != null ? m.failure : m.plan == null ? "no plan" : m.plan.size() + " steps");
+                if (m.failure != null) {
+                    if (failure == null) failure = m.failure;
+                    continue;
+                }
+                if (m.plan == null) continue;
+                if (!verifier.solves(m.plan)) {
+                    if (partial == null && !m.plan.isEmpty()) partial = m;
+                    continue;
+                }
+                if (!optimal || m.exact) winner = m;
+                else if (fallback == null || m.plan.size() < fallback.plan.size()) fallback = m;
+            }
+        } catch (InterruptedException e) {
+            // Stopped by the game, the search is over for every member
+            cancel(members, null);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        long cpuNanos = cancel(members, winner);
+        if (winner == null) winner = fallback != null ? fallback : partial;
+        if (winner == null && failure != null) throw new RuntimeException("Portfolio member failed", failure);
+
+        metrics = winner == null ? new SearchMetrics() : winner.agent.getMetrics();
+        metrics.engine = winner == null ? "PORTFOLIO" : "PORTFOLIO:" + winner.strategy;
+        metrics.wallMillis = System.currentTimeMillis() - thinkStartMillis;
+        metrics.cpuMillis = cpuNanos / 1_000_000;
+        if (verbose) {
+            out.println("Portfolio: " + (winner == null ? "no plan" : winner.strategy + " won"));
+            out.println("Metrics: " + metrics.toJson());
+        }
+        if (winner != null) return winner.plan;
+        // Out of time after a partial plan was played out, let the game report the timeout rather than give up
+        return members.get(0).agent.outOfTime() ? new ArrayList<>() : null;
+    }
+
+    // Interrupts and joins every member but 'winner' and returns the CPU time all of them spent
+    private static long cancel(List<Member> members, Member winner) {
+        for (Member m : members) if (m != winner) m.interrupt();
+        long cpuNanos = 0;
+        boolean interrupted = false;
+        for (Member m : members) {
+            while (m.isAlive()) {
+                try {
+                    m.join();
+                } catch (InterruptedException e) {
+                    // Still wait for the members, they stop at their next expansion
+                    interrupted = true;
+                }
+            }
+            cpuNanos += m.cpuNanos;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return cpuNanos;
+    }
+
+    // One strategy searching the level on its own thread, reporting to 'finished' when done
+    static class Member extends Thread {
+        final String strategy;
+        final MyAgent agent = new MyAgent();
+        // TRUE if its plans are move-optimal when optimality is required
+        final boolean exact;
+        private final LevelTables tables;
+        private final Deadline deadline;
+        private final BlockingQueue<Member> finished;
+        List<EDirection> plan;
+        Throwable failure;
+        long wallMillis, cpuNanos;
+
+        Member(String strategy, LevelTables tables, Deadline deadline, BlockingQueue<Member> finished) {
+            super("Portfolio-" + strategy);
+            setDaemon(true);
+            this.strategy = strategy;
+            this.tables = tables;
+            this.deadline = deadline;
+            this.finished = finished;
+            agent.threads = 1;
+            if (strategy.equals("ARA")) {
+                agent.engine = MyAgent.Engine.MOVES;
+                agent.init(false, false);
+            } else {
+                agent.engine = MyAgent.Engine.valueOf(strategy);
+                agent.anytimeWeight = 1;
+                agent.init(true, false);
+            }
+            exact = !strategy.equals("ARA") && agent.moveOptimal();
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                plan = agent.search(tables, deadline);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                wallMillis = System.currentTimeMillis() - start;
+                cpuNanos = MyAgent.cpuNanos();
+                finished.add(this);
+            }
+        }
+    }
+}
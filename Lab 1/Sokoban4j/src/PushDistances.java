@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.List;
+
+import agents.search.BucketQueue;
+import game.board.slim.BoardSlim;
+import game.board.slim.STile;
+
+// Static push analysis of the empty level (walls only), computed once per level.
+// The search graph is (box square, player side): a box at b with the player on side s can be pushed away from s
+// iff the square beyond b is free, and the player can switch sides iff those sides are connected around b.
+// A reverse BFS from every goal gives the exact number of pushes a lone box needs to reach that goal.
+// The per-square minimum over sides is admissible but not consistent (a push can shorten it by more than one when
+// the player ends up on a side it could not walk to), so the tables used for the heuristic are relaxed into the
+// largest consistent lower bound below it. Squares no goal can be reached from are dead.
+class PushDistances {
+    static final int INF = Integer.MAX_VALUE;
+
+    // Dimensions of the level and of the padded grid (one wall square of margin on every side)
+    private final int width, height, pw, ph;
+    private final boolean[] wall;
+    // Index offsets per direction in the padded grid, in EDirection index order
+    private final int[] step = new int[4];
+    // Label of the player region of every side of a square, when only that square is blocked: sides with equal
+    // labels are connected. Index = padded cell * 4 + side, -1 for walls.
+    private final byte[] sideRegion;
+    // Pushes of a lone box from square (x * height + y) to each goal, in goal order, consistent over pushes
+    final int[][] goalDists;
+    // Same as the minimum over goals
+    final int[][] minDists;
+    // Squares a lone box cannot be pushed to any goal from
+    final boolean[][] dead;
+
+    PushDistances(BoardSlim board) {
+        this(board, MyAgent.findEntities(board, STile.PLACE_FLAG));
+    }
+
+    PushDistances(BoardSlim board, List<MyAgent.Point> goals) {
+        width = board.width();
+        height = board.height();
+        pw = width + 2;
+        ph = height + 2;
+        wall = new boolean[pw * ph];
+        Arrays.fill(wall, true);
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++) wall[cell(x, y)] = STile.isWall(board.tiles[x][y]);
+        for (int i = 0; i < 4; i++) step[i] = MyAgent.dirList[i].dX * ph + MyAgent.dirList[i].dY;
+        sideRegion = new byte[pw * ph * 4];
+        labelSides();
+        goalDists = new int[goals.size()][width * height];
+        minDists = new int[width][height];
+        dead = new boolean[width][height];
+        for (int[] d : minDists) Arrays.fill(d, INF);
+        for (boolean[] d : dead) Arrays.fill(d, true);
+        int[] sideDists = new int[pw * ph * 4], queue = new int[pw * ph * 4];
+        BucketQueue open = new BucketQueue();
+        for (int gi = 0; gi < goals.size(); gi++) {
+            MyAgent.Point g = goals.get(gi);
+            pushBfs(cell(g.x, g.y), sideDists, queue);
+            int[] dists = goalDists[gi];
+            for (int x = 0; x < width; x++)
+                for (int y = 0; y < height; y++) {
+                    int c = cell(x, y), d = INF;
+                    for (int s = 0; s < 4; s++) d = Math.min(d, sideDists[c * 4 + s]);
+                    dists[x * height + y] = d;
+                    if (d != INF) dead[x][y] = false;
+                }
+            makeConsistent(dists, open);
+            for (int x = 0; x < width; x++)
+                for (int y = 0; y < height; y++) minDists[x][y] = Math.min(minDists[x][y], dists[x * height + y]);
+        }
+    }
+
+    // Reverse BFS over (square, side) states from a box resting on 'goal' with the player on any side
+    private void pushBfs(int goal, int[] dist, int[] queue) {
+        Arrays.fill(dist, INF);
+        int head = 0, tail = 0;
+        for (int s = 0; s < 4; s++)
+            if (!wall[goal + step[s]] && dist[goal * 4 + s] == INF) tail = reach(goal, s, 0, dist, queue, tail);
+        while (head < tail) {
+            int state = queue[head++], b = state >> 2, s = state & 3, d = dist[state];
+            // Box came from the square on side s, pushed by a player standing one square further
+            int prev = b + step[s];
+            if (wall[prev + step[s]] || dist[prev * 4 + s] != INF) continue;
+            tail = reach(prev, s, d + 1, dist, queue, tail);
+        }
+    }
+
+    // Sets side s of square b and every side connected to it to distance d
+    private int reach(int b, int s, int d, int[] dist, int[] queue, int tail) {
+        byte region = sideRegion[b * 4 + s];
+        for (int t = 0; t < 4; t++)
+            if (sideRegion[b * 4 + t] == region && dist[b * 4 + t] == INF) {
+                dist[b * 4 + t] = d;
+                queue[tail++] = b * 4 + t;
+            }
+        return tail;
+    }
+
+    // Lowers distances until a single push never decreases them by more than one
+    private void makeConsistent(int[] dists, BucketQueue q) {
+        for (int i = 0; i < dists.length; i++) if (dists[i] != INF) q.add(i, dists[i]);
+        while (!q.isEmpty()) {
+            int d = q.minPriority(), i = q.poll(), x = i / height, y = i % height, c = cell(x, y);
+            if (dists[i] != d) continue;
+            for (int s = 0; s < 4; s++) {
+                // Box at 'from' pushed onto c by a player standing behind it
+                int from = c + step[s];
+                if (wall[from] || wall[from + step[s]]) continue;
+                int fi = (x + MyAgent.dirList[s].dX) * height + y + MyAgent.dirList[s].dY;
+                if (dists[fi] > d + 1) {
+                    dists[fi] = d + 1;
+                    q.add(fi, d + 1);
+                }
+            }
+        }
+    }
+
+    // Labels the player regions around every free square. Sides joined through free diagonal squares of the ring of
+    // 8 neighbours are connected right away; only squares left with several local groups need a flood fill.
+    private void labelSides() {
+        Arrays.fill(sideRegion, (byte) -1);
+        int[] stamp = new int[pw * ph], queue = new int[pw * ph];
+        int[] group = new int[4];
+        int gen = 0;
+        for (int b = 0; b < pw * ph; b++) {
+            if (wall[b]) continue;
+            int groups = 0;
+            for (int s = 0; s < 4; s++) group[s] = wall[b + step[s]] ? -1 : groups++;
+            for (int s = 0; s < 4; s++) {
+                int t = (s + 1) & 3;
+                if (group[s] < 0 || group[t] < 0 || wall[b + step[s] + step[t]] || group[s] == group[t]) continue;
+                int from = group[t], to = group[s];
+                for (int k = 0; k < 4; k++) if (group[k] == from) group[k] = to;
+                groups--;
+            }
+            if (groups <= 1) {
+                for (int s = 0; s < 4; s++) if (group[s] >= 0) sideRegion[b * 4 + s] = 0;
+                continue;
+            }
+            byte label = 0;
+            for (int s = 0; s < 4; s++) {
+                if (group[s] < 0 || sideRegion[b * 4 + s] >= 0) continue;
+                flood(b + step[s], b, ++gen, stamp, queue);
+                for (int t = s; t < 4; t++)
+                    if (group[t] >= 0 && stamp[b + step[t]] == gen) sideRegion[b * 4 + t] = label;
+                label++;
+            }
+        }
+    }
+
+    // Marks the squares reachable from 'from' with 'blocked' occupied
+    private void flood(int from, int blocked, int gen, int[] stamp, int[] queue) {
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        stamp[from] = gen;
+        while (head < tail) {
+            int p = queue[head++];
+            for (int i = 0; i < 4; i++) {
+                int next = p + step[i];
+                if (wall[next] || next == blocked || stamp[next] == gen) continue;
+                stamp[next] = gen;
+                queue[tail++] = next;
+            }
+        }
+    }
+
+    private int cell(int x, int y) {
+        return (x + 1) * ph + y + 1;
+    }
+}
@@ -0,0 +1,241 @@
+import static java.lang.System.out;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import agents.search.BitBoard;
+import agents.search.BucketQueue;
+import agents.search.LongHashSet;
+import agents.search.LongIntHashMap;
+import agents.search.NodeArena;
+import game.SearchMetrics;
+import game.actions.EDirection;
+
+// A* over pushes instead of single player steps.
+// A node is a box configuration plus the region the player can reach, identified by its top-left square, so all
+// walks inside a region collapse into one state. Edges are pushes; the walk leading to each push is recomputed by
+// BFS when the solution is unrolled into EDirection steps. Solutions are push-optimal, not necessarily move-optimal.
+class PushSearch {
+    final MyAgent agent;
+    final int width, height;
+    // Flat board, index = x * height + y
+    final boolean[] wall;
+    // Box occupancy of the configuration being expanded or unrolled
+    final BitBoard occupied;
+    // Stamped scratch grids: a cell is set iff its stamp equals the current one
+    private final int[] reachStamp, prev;
+    final int[] queue;
+    private int reachGen;
+    // Index offsets per direction, in EDirection index order
+    final int[] step;
+    // Macro analysis of the agent (null if disabled), and the pushes of every macro edge by child node
+    private final Macros macros;
+    private final LongIntHashMap macroPushes = new LongIntHashMap(1 << 10);
+    private final List<int[]> macroScripts = new ArrayList<>();
+
+    PushSearch(MyAgent agent) {
+        this.agent = agent;
+        this.width = MyAgent.board.width();
+        this.height = MyAgent.board.height();
+        int n = width * height;
+        wall = new boolean[n];
+        for (int x = 0; x < width; x++)
+            for (int y = 0; y < height; y++) wall[x * height + y] = MyAgent.walls[x][y];
+        occupied = new BitBoard(n);
+        reachStamp = new int[n];
+        prev = new int[n];
+        queue = new int[n];
+        step = new int[4];
+        for (int i = 0; i < 4; i++) step[i] = MyAgent.dirList[i].dX * height + MyAgent.dirList[i].dY;
+        macros = agent.macros;
+    }
+
+    List<EDirection> search() {
+        long completedHash = agent.completedHash();
+        short[] boxes = MyAgent.packBoxes(MyAgent.board);
+        long startHashBox = MyAgent.hashBoxes(boxes);
+        int startPlayer = MyAgent.board.playerX * height + MyAgent.board.playerY;
+        MatchingHeuristic matcher = agent.newMatcher();
+        SearchMetrics metrics = agent.metrics();
+        long heuristicStart = System.nanoTime();
+        int startH = matcher != null ? matcher.solve(boxes) : MyAgent.heuristic(boxes);
+        metrics.heuristicNanos += System.nanoTime() - heuristicStart;
+        NodeArena nodes = new NodeArena(boxes.length);
+        int start = nodes.add(NodeArena.NONE, 0, packed(startPlayer), startH, nodes.intern(boxes, startHashBox));
+        LongHashSet vis = new LongHashSet();
+        markBoxes(boxes);
+        vis.add(startHashBox ^ regionHash(startPlayer));
+        BucketQueue q = new BucketQueue();
+        q.add(start, startH);
+        int curr = NodeArena.NONE;
+        boolean completed = false;
+        short[] currBoxes = new short[boxes.length], nextBoxes = new short[boxes.length];
+        while (!q.isEmpty()) {
+            metrics.open(q.size());
+            curr = q.poll();
+            agent.searchedNodes++;
+            // Given up without a solution, the counters below are still recorded
+            if (agent.cancelled()) break;
+            long currHashBox = nodes.hashBox(curr);
+            completed = currHashBox == completedHash;
+            if (completed) break;
+            nodes.boxes(nodes.boxRef(curr), currBoxes);
+            heuristicStart = System.nanoTime();
+            int currF = nodes.f(curr), currH = matcher != null ? matcher.load(currHashBox, currBoxes) : 0;
+            metrics.heuristicNanos += System.nanoTime() - heuristicStart;
+            markBoxes(currBoxes);
+            // Collect reachable squares first, the region flood is reused for child normalization
+            int reachable = flood(unpacked(nodes.player(curr)));
+            int[] region = new int[reachable];
+            System.arraycopy(queue, 0, region, 0, reachable);
+            for (int p : region)
+                for (int i = 0; i < 4; i++) {
+                    int box = p + step[i], target = box + step[i];
+                    if (!occupied.get(box) || wall[target] || occupied.get(target)) continue;
+                    int boxX = box / height, boxY = box % height;
+                    if (agent.dsd.detectSimple(target / height, target % height)) continue;
+                    // Tunnel or goal room macro: the edge ends after its last push
+                    int[] macro = macros == null ? null : macros.macro(occupied, box, i);
+                    int pushes = 1, end = box, dir = i;
+                    if (macro != null) {
+                        pushes = macro.length;
+                        end = Macros.square(macro[pushes - 1]);
+                        dir = Macros.dir(macro[pushes - 1]);
+                        target = end + step[dir];
+                    }
+                    int endX = end / height, endY = end % height, tx = target / height, ty = target % height;
+                    long nextHashBox = currHashBox ^ MyAgent.zobrist_hashes[0][boxX][boxY]
+                            ^ MyAgent.zobrist_hashes[0][tx][ty];
+                    System.arraycopy(currBoxes, 0, nextBoxes, 0, currBoxes.length);
+                    int movedBox = MyAgent.moveBox(nextBoxes, boxX, boxY, tx, ty);
+                    // Normalize the player region of the child and check deadlocks on its occupancy
+                    occupied.move(box, target);
+                    long nextHashFull = nextHashBox ^ regionHash(end);
+                    boolean duplicate = vis.contains(nextHashFull);
+                    boolean skip = duplicate || agent.dsd.detectFreeze(occupied, tx, ty, nextHashBox)
+                            || agent.corralDetection && agent.dsd.detectCorral(nextBoxes, occupied, endX, endY, tx, ty);
+                    occupied.move(target, box);
+                    if (duplicate) metrics.duplicates++;
+                    if (skip) continue;
+                    int nextF;
+                    if (matcher == null)
+                        nextF = currF + pushes - MyAgent.minDists[boxX][boxY] + MyAgent.minDists[tx][ty];
+                    else {
+                        heuristicStart = System.nanoTime();
+                        int nextH = matcher.moved(movedBox, tx, ty, nextHashBox);
+                        metrics.heuristicNanos += System.nanoTime() - heuristicStart;
+                        if (nextH >= MatchingHeuristic.UNREACHABLE) continue;
+                        nextF = currF + pushes - currH + nextH;
+                    }
+                    vis.add(nextHashFull);
+                    metrics.generated++;
+                    int child = nodes.add(curr, dir, packed(end), nextF, nodes.intern(nextBoxes, nextHashBox));
+                    if (macro != null) {
+                        macroPushes.put(child, macroScripts.size());
+                        macroScripts.add(macro);
+                    }
+                    q.add(child, nextF);
+                }
+        }
+        metrics.visited(vis.size(), vis.loadFactor());
+        if (agent.verbose())
+            out.printf("Push search: %d pushes generated, %d box sets\n", nodes.size(), nodes.boxSets());
+        if (curr == NodeArena.NONE || !completed) return null;
+        return unroll(nodes, curr);
+    }
+
+    // Expands pushes into single steps, finding each walk by BFS in the box configuration preceding the push
+    private List<EDirection> unroll(NodeArena nodes, int goal) {
+        List<Integer> path = new ArrayList<>();
+        for (int n = goal; nodes.parent(n) != NodeArena.NONE; n = nodes.parent(n)) path.add(n);
+        List<EDirection> actions = new ArrayList<>();
+        short[] boxes = new short[MyAgent.board.boxCount];
+        int player = MyAgent.board.playerX * height + MyAgent.board.playerY;
+        for (int k = path.size() - 1; k >= 0; k--) {
+            int n = path.get(k);
+            nodes.boxes(nodes.boxRef(nodes.parent(n)), boxes);
+            int macro = macroPushes.get(n, -1);
+            if (macro < 0) {
+                player = appendPush(boxes, player, unpacked(nodes.player(n)), nodes.dir(n), actions);
+                continue;
+            }
+            for (int push : macroScripts.get(macro)) {
+                int end = Macros.square(push), target = end + step[Macros.dir(push)];
+                player = appendPush(boxes, player, end, Macros.dir(push), actions);
+                MyAgent.moveBox(boxes, end / height, end % height, target / height, target % height);
+            }
+        }
+        return actions;
+    }
+
+    // Appends the walk from 'player' to the push in direction 'dir' that leaves the player on 'end', then the push
+    // itself, in the box configuration 'boxes' preceding it; returns 'end'
+    int appendPush(short[] boxes, int player, int end, int dir, List<EDirection> actions) {
+        markBoxes(boxes);
+        int from = end - step[dir];
+        walk(player, from, actions);
+        actions.add(MyAgent.dirList[dir]);
+        return end;
+    }
+
+    // Appends the shortest walk from 'from' to 'to' avoiding marked boxes
+    private void walk(int from, int to, List<EDirection> actions) {
+        reachGen++;
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        reachStamp[from] = reachGen;
+        while (head < tail) {
+            int p = queue[head++];
+            if (p == to) break;
+            for (int i = 0; i < 4; i++) {
+                int next = p + step[i];
+                if (wall[next] || occupied.get(next) || reachStamp[next] == reachGen) continue;
+                reachStamp[next] = reachGen;
+                prev[next] = i;
+                queue[tail++] = next;
+            }
+        }
+        int at = actions.size();
+        for (int p = to; p != from; p -= step[prev[p]]) actions.add(at, MyAgent.dirList[prev[p]]);
+    }
+
+    // Flood fills the player region from 'from'; reachable squares end up in queue[0, count)
+    int flood(int from) {
+        reachGen++;
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        reachStamp[from] = reachGen;
+        while (head < tail) {
+            int p = queue[head++];
+            for (int i = 0; i < 4; i++) {
+                int next = p + step[i];
+                if (wall[next] || occupied.get(next) || reachStamp[next] == reachGen) continue;
+                reachStamp[next] = reachGen;
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+
+    // Player hash of the region reachable from 'from', normalized to its top-left square
+    long regionHash(int from) {
+        int count = flood(from), min = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int p = queue[i], key = (p % height) * width + p / height;
+            if (key < min) min = key;
+        }
+        return MyAgent.zobrist_hashes[1][min % width][min / width];
+    }
+
+    void markBoxes(short[] boxes) {
+        MyAgent.occupy(boxes, occupied);
+    }
+
+    int packed(int p) {
+        return (p / height & 0xFF) | (p % height & 0xFF) << 8;
+    }
+
+    int unpacked(int packed) {
+        return (packed & 0xFF) * height + (packed >> 8);
+    }
+}
@@ -16,7 +16,7 @@ public class SokobanMain {
 
     public static SokobanResultType runLevel(
         IAgent agent, String agentId, String levelset, int level,
-        String resultDir, int timeout, boolean verbose, boolean optimal) {
+        String resultDir, int timeout, boolean verbose, boolean optimal, String solutionDir) {
 
         agent.init(optimal, verbose);
 
@@ -27,7 +27,8 @@ public class SokobanMain {
             System.out.println();
 
         SokobanResult result =
-            Sokoban.simAgentLevel(agentId, levelset, level, timeout, agent, verbose, optimal);
+            Sokoban.simAgentLevel(agentId, levelset, level, timeout, agent, verbose, optimal,
+                                  solutionDir == null ? null : new File(solutionDir));
 
         SokobanResultType resultType = result.getResult();
         System.out.printf("%s in %.1f ms",
@@ -48,7 +49,7 @@ public class SokobanMain {
     }
 
     static void runLevelSet(String agentId, String className, String levelset, int maxFail, String resultDir,
-                            int timeout, boolean verbose, boolean optimal) {
+                            int timeout, boolean verbose, boolean optimal, String solutionDir) {
         System.out.printf("Running %s on levels in %s\n", className, levelset);
 
         SokobanConfig config = new SokobanConfig();
@@ -56,6 +57,7 @@ public class SokobanMain {
         config.requireOptimal = optimal;
         config.timeoutMillis = timeout;
         config.verbose = verbose;
+        config.solutionDir = solutionDir == null ? null : new File(solutionDir);
 
         RunSokobanLevels run = new RunSokobanLevels(
             config, className, levelset,
@@ -63,6 +65,23 @@ public class SokobanMain {
         run.run();
     }
 
+    static void runBatch(String agentId, String className, String levelset, int maxFail, String resultDir,
+                         int timeout, boolean verbose, boolean optimal, String solutionDir, int threads) {
+        System.out.printf("Running %s on levels in %s with %d threads\n", className, levelset, threads);
+
+        SokobanConfig config = new SokobanConfig();
+        config.id = agentId;
+        config.requireOptimal = optimal;
+        config.timeoutMillis = timeout;
+        config.verbose = verbose;
+        config.solutionDir = solutionDir == null ? null : new File(solutionDir);
+
+        BatchSokobanLevels batch = new BatchSokobanLevels(
+            config, className, levelset,
+            resultDir == null ? null : new File(resultDir), maxFail, threads);
+        batch.run();
+    }
+
     static void usage() {
         out.println("usage: sokoban [<agent-classname>] [<option>...]");
         out.println("options:");
@@ -72,6 +91,8 @@ public class SokobanMain {
         out.println("  -maxfail <num> : maximum level failures allowed");
         out.println("  -optimal : require move-optimal solutions");
         out.println("  -resultdir <path> : directory for results in CSV format");
+        out.println("  -solutions <path> : directory of stored solutions to replay and extend");
+        out.println("  -threads <num> : solve the levels of a set concurrently in this JVM");
         out.println("  -timeout <num> : maximum thinking time in milliseconds");
         out.println("  -v : verbose output");
         System.exit(1);
@@ -88,8 +109,10 @@ public class SokobanMain {
         int maxFail = 0;
         boolean optimal = false;
         String resultDir = null;
+        String solutionDir = null;
         int timeout = 8000;
         boolean verbose = true;
+        int threads = 0;
 
         for (int i = 0 ; i < args.length ; ++i) {
             String s = args[i];
@@ -117,6 +140,12 @@ public class SokobanMain {
                 case "-timeout":
                     timeout = Integer.parseInt(args[++i]);
                     break;
+                case "-solutions":
+                    solutionDir = args[++i];
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
                 case "-v":
                     verbose = true;
                     break;
@@ -136,11 +165,14 @@ public class SokobanMain {
             if (level > 0) {
                 IAgent agent = (IAgent) Class.forName(className).getConstructor().newInstance();
                 SokobanResultType resultType = runLevel(
-                    agent, agentId, levelset, level, resultDir, timeout, verbose, optimal);
+                    agent, agentId, levelset, level, resultDir, timeout, verbose, optimal, solutionDir);
                 System.exit(resultType.getExitValue());	    	    
             }
+            else if (threads > 0)
+                runBatch(agentId, className, levelset, maxFail,
+                         resultDir, timeout, verbose, optimal, solutionDir, threads);
             else
                 runLevelSet(agentId, className, levelset, maxFail,
-                            resultDir, timeout, verbose, optimal);
+                            resultDir, timeout, verbose, optimal, solutionDir);
     }
 }
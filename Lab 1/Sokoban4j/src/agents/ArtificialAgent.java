@@ -2,7 +2,9 @@ package agents;
 
 import java.util.*;
 
+import game.Deadline;
 import game.IAgent;
+import game.SearchMetrics;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 
@@ -11,8 +13,16 @@ public abstract class ArtificialAgent implements IAgent {
 	private List<EDirection> actions;
 	
 	private BoardCompact board;
+
+	private volatile Deadline deadline = Deadline.none();
+
+	// The last think() had nothing to play before the deadline (an empty plan), no point in asking it again
+	private boolean idle;
 		
 	private ThinkThread thread;
+
+	// Think thread of the last stop, possibly still winding down
+	private ThinkThread stopped;
 	
 	private Object mutex = new Object();
 	
@@ -20,6 +30,9 @@ public abstract class ArtificialAgent implements IAgent {
     
     protected boolean optimal, verbose;
 
+    // Counters of the last think(), filled in by the agent
+    protected SearchMetrics metrics;
+
     @Override
     public void init(boolean optimal, boolean verbose) {
         this.optimal = optimal;
@@ -31,6 +44,14 @@ public abstract class ArtificialAgent implements IAgent {
 		actions = null;
 		board = null;
 		agentException = null;
+		metrics = null;
+		idle = false;
+		deadline = Deadline.none();
+	}
+
+	@Override
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
 	}
 
 	@Override
@@ -46,25 +67,54 @@ public abstract class ArtificialAgent implements IAgent {
 			return actions.remove(0);
 		}
 		
-		// OTHERWISE THINK!
+		// OTHERWISE THINK AND WAIT FOR THE PLAN
 		synchronized(mutex) {
-			if (agentException != null) {
-				throw agentException;
-			}
-			ensureThinkThread();
-			if (actions == null || actions.size() == 0) {
-				thread.think = true;
-			}
-			if (actions != null && actions.size() != 0) {
-				// => EXECUTE
-				return actions.remove(0);
+			while (true) {
+				if (agentException != null) {
+					throw agentException;
+				}
+				if (actions != null && actions.size() != 0) {
+					// => EXECUTE
+					return actions.remove(0);
+				}
+				// Out of time, no point in thinking again before the game reports the timeout
+				if (deadline.expired()) return null;
+				if (!idle) {
+					ensureThinkThread();
+					if (!thread.think) {
+						thread.think = true;
+						mutex.notifyAll();
+					}
+				}
+				// Woken by the think thread once it is done, or idle until the deadline so the game sees its timeout
+				try {
+					mutex.wait(deadline.isBounded() ? Math.max(1, deadline.remainingMillis()) : 0);
+				} catch (InterruptedException e) {
+					// The game is stopping
+					Thread.currentThread().interrupt();
+					return null;
+				}
 			}
 		}
-		return null;
 	}
 	
 	protected abstract List<EDirection> think(final BoardCompact board);
 
+	/**
+	 * Plans from 'board' within 'deadline'; NULL == give up. The plan need not solve the level: a best-effort partial
+	 * plan is played out and the agent thinks again from where it ends while time is left. An empty plan means nothing
+	 * more can be found in time: the agent then idles until the deadline instead of being asked again (without a
+	 * deadline, it is asked again). Agents ignoring the deadline implement {@link #think(BoardCompact)} alone.
+	 */
+	protected List<EDirection> think(final BoardCompact board, final Deadline deadline) {
+		return think(board);
+	}
+
+	@Override
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public void victory() {
 		stopThinkThread();		
@@ -74,6 +124,17 @@ public abstract class ArtificialAgent implements IAgent {
 	public void stop() {
 		stopThinkThread();
 	}
+
+	@Override
+	public boolean awaitStopped(long timeoutMillis) throws InterruptedException {
+		ThinkThread t;
+		synchronized(mutex) {
+			t = thread != null ? thread : stopped;
+		}
+		if (t == null) return true;
+		t.join(Math.max(1, timeoutMillis));
+		return !t.isAlive();
+	}
 	
 	private void ensureThinkThread() {
 		synchronized(mutex) {
@@ -86,8 +147,10 @@ public abstract class ArtificialAgent implements IAgent {
 	private void stopThinkThread() {
 		synchronized(mutex) {
 			if (thread != null) {
+				deadline.cancel();
 				thread.shouldRun = false;
 				thread.interrupt();
+				stopped = thread;
 				thread = null;
 			}
 		}
@@ -109,32 +172,35 @@ public abstract class ArtificialAgent implements IAgent {
 		public void run() {
 			try {
 				while (shouldRun && !interrupted()) {
-					while (!think) {
-						try {
-							Thread.sleep(50);
-						} catch (Exception e) {
-							throw new RuntimeException("Interrupted on sleep");
-						}
+					synchronized(mutex) {
+						while (!think) mutex.wait();
 					}
-					List<EDirection> thinkActions = think(board);
+					List<EDirection> thinkActions = think(board, deadline);
 					synchronized(mutex) {
 						if (ArtificialAgent.this.thread == this) {
-                            if (thinkActions != null)
+                            if (thinkActions != null) {
                                 actions = thinkActions;
-                            else {
+                                idle = thinkActions.isEmpty() && deadline.isBounded();
+                            } else {
                                 actions = new ArrayList<EDirection>();
                                 actions.add(EDirection.NONE);
                             }
 						}
 						think = false;
+						mutex.notifyAll();
 					}
 				}
+			} catch (InterruptedException e) {
+				// Stopped while waiting for work
 			} catch (Exception e) {
 				synchronized(mutex) {
 					agentException = new RuntimeException("ThinkThread failed.", e);
 				}
 			} finally {
-				running = false;
+				synchronized(mutex) {
+					running = false;
+					mutex.notifyAll();
+				}
 			}
 		}
 		
@@ -0,0 +1,42 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import game.IAgent;
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+
+/**
+ * Plays a fixed plan, e.g. a solution from {@link utils.SolutionStore}, then gives up.
+ */
+public class ReplayAgent implements IAgent {
+    private final List<EDirection> plan;
+    private int next;
+
+    public ReplayAgent(List<EDirection> plan) {
+        this.plan = new ArrayList<EDirection>(plan);
+    }
+
+    @Override
+    public void init(boolean optimal, boolean verbose) { }
+
+    @Override
+    public void newLevel() {
+        next = 0;
+    }
+
+    @Override
+    public void observe(BoardCompact board) { }
+
+    @Override
+    public EDirection act() {
+        return next < plan.size() ? plan.get(next++) : EDirection.NONE;
+    }
+
+    @Override
+    public void victory() { }
+
+    @Override
+    public void stop() { }
+}
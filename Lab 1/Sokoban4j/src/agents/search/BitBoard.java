@@ -0,0 +1,47 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Set of board cells, one bit per cell of a flat grid (e.g. index = x * height + y), used as box occupancy.
+ * <br/>
+ * Membership tests are O(1) instead of a scan over the box list, and a push is a {@link #move(int, int)} of one bit,
+ * so a board can be kept in sync with a search node incrementally.
+ */
+public class BitBoard {
+    private final long[] words;
+
+    public BitBoard(int cells) {
+        words = new long[(cells + 63) >>> 6];
+    }
+
+    public boolean get(int cell) {
+        return (words[cell >>> 6] & 1L << cell) != 0;
+    }
+
+    public void set(int cell) {
+        words[cell >>> 6] |= 1L << cell;
+    }
+
+    public void clear(int cell) {
+        words[cell >>> 6] &= ~(1L << cell);
+    }
+
+    /**
+     * Moves the bit of cell 'from' to cell 'to', e.g. a box being pushed.
+     */
+    public void move(int from, int to) {
+        clear(from);
+        set(to);
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    public int cardinality() {
+        int n = 0;
+        for (long w : words) n += Long.bitCount(w);
+        return n;
+    }
+}
@@ -0,0 +1,71 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Priority queue for small non-negative integer priorities (e.g. A* f-values).
+ * <br/>
+ * Values are kept in one stack per priority, so {@link #add(int, int)} and {@link #poll()} run in amortized O(1)
+ * instead of O(log n). Values with equal priority are returned LIFO, which prefers the most recently generated
+ * (deepest) nodes on equal-f plateaus.
+ */
+public class BucketQueue implements IntPriorityQueue {
+    private static final int DEFAULT_BUCKETS = 256;
+    private static final int DEFAULT_BUCKET_CAPACITY = 16;
+
+    private int[][] buckets;
+    private int[] sizes;
+    // Lowest bucket that may be non-empty
+    private int min;
+    private int size;
+
+    public BucketQueue() {
+        this.buckets = new int[DEFAULT_BUCKETS][];
+        this.sizes = new int[DEFAULT_BUCKETS];
+    }
+
+    @Override
+    public void add(int value, int priority) {
+        if (priority < 0) throw new IllegalArgumentException("Negative priority: " + priority);
+        if (priority >= buckets.length) grow(priority);
+        int[] bucket = buckets[priority];
+        if (bucket == null) bucket = buckets[priority] = new int[DEFAULT_BUCKET_CAPACITY];
+        else if (sizes[priority] == bucket.length)
+            bucket = buckets[priority] = Arrays.copyOf(bucket, bucket.length * 2);
+        bucket[sizes[priority]++] = value;
+        if (priority < min || size == 0) min = priority;
+        size++;
+    }
+
+    @Override
+    public int poll() {
+        while (sizes[min] == 0) min++;
+        size--;
+        return buckets[min][--sizes[min]];
+    }
+
+    @Override
+    public int minPriority() {
+        if (size == 0) return -1;
+        while (sizes[min] == 0) min++;
+        return min;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(sizes, 0);
+        min = 0;
+        size = 0;
+    }
+
+    private void grow(int priority) {
+        int n = Math.max(buckets.length * 2, priority + 1);
+        buckets = Arrays.copyOf(buckets, n);
+        sizes = Arrays.copyOf(sizes, n);
+    }
+}
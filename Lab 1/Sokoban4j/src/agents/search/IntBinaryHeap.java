@@ -0,0 +1,68 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int values keyed by int priorities, stored in two parallel primitive arrays.
+ * Ties are broken arbitrarily.
+ */
+public class IntBinaryHeap implements IntPriorityQueue {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int[] values = new int[DEFAULT_CAPACITY];
+    private int[] priorities = new int[DEFAULT_CAPACITY];
+    private int size;
+
+    @Override
+    public void add(int value, int priority) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            priorities = Arrays.copyOf(priorities, size * 2);
+        }
+        // Sift up
+        int i = size++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (priorities[p] <= priority) break;
+            values[i] = values[p];
+            priorities[i] = priorities[p];
+            i = p;
+        }
+        values[i] = value;
+        priorities[i] = priority;
+    }
+
+    @Override
+    public int poll() {
+        int res = values[0];
+        int value = values[--size], priority = priorities[size];
+        // Sift down the last element from the root
+        int i = 0, half = size >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < size && priorities[c + 1] < priorities[c]) c++;
+            if (priority <= priorities[c]) break;
+            values[i] = values[c];
+            priorities[i] = priorities[c];
+            i = c;
+        }
+        values[i] = value;
+        priorities[i] = priority;
+        return res;
+    }
+
+    @Override
+    public int minPriority() {
+        return size == 0 ? -1 : priorities[0];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,30 @@
+package agents.search;
+
+/**
+ * Min-priority queue of int handles (e.g. {@link NodeArena} nodes) with explicit integer priorities.
+ */
+public interface IntPriorityQueue {
+
+    /**
+     * Inserts 'value' with non-negative 'priority'.
+     */
+    void add(int value, int priority);
+
+    /**
+     * Removes and returns a value of the lowest priority; undefined if the queue is empty.
+     */
+    int poll();
+
+    /**
+     * Lowest priority in the queue, or -1 if empty.
+     */
+    int minPriority();
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    void clear();
+}
@@ -0,0 +1,181 @@
+package agents.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Open-addressed set of 64-bit keys (e.g. Zobrist hashes) used as a closed/visited set.
+ * <br/>
+ * Keys are spread with a 64-bit mixer and placed by power-of-two masking with linear probing. Empty slots hold the
+ * sentinel 0, the key 0 itself is tracked by a separate flag, so no parallel "occupied" array is needed.
+ * <br/>
+ * The table can live off-heap in direct {@link ByteBuffer}s, so a large closed set neither counts against the
+ * Java heap nor gets scanned by the GC (direct memory is bounded by -XX:MaxDirectMemorySize).
+ */
+public class LongHashSet {
+    private static final int DEFAULT_EXPECTED = 1 << 21;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double MAX_LOAD = 0.75;
+    // 2^27 longs == 1 GB per direct buffer
+    private static final int CHUNK_BITS = 27;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    private final boolean offHeap;
+    private long[] keys;
+    private LongBuffer[] chunks;
+    private int mask;
+    private int size;
+    private boolean hasZero;
+
+    // Statistics
+    private long operations, probes;
+    private int maxProbe, resizes;
+
+    public LongHashSet() {
+        this(DEFAULT_EXPECTED, false);
+    }
+
+    /**
+     * @param expected number of keys the set should hold without resizing
+     * @param offHeap TRUE == keep the table in direct memory
+     */
+    public LongHashSet(int expected, boolean offHeap) {
+        this.offHeap = offHeap;
+        allocate(capacityFor(expected));
+    }
+
+    /**
+     * 64-bit mixer (Murmur3 finalizer), spreads all key bits over the low bits used for indexing.
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Adds 'key'; returns TRUE if it was not present before.
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        operations++;
+        int i = (int) mix(key) & mask, probe = 1;
+        for (long k; (k = get(i)) != 0; i = (i + 1) & mask, probe++) {
+            if (k == key) {
+                countProbe(probe);
+                return false;
+            }
+        }
+        countProbe(probe);
+        set(i, key);
+        if (++size > MAX_LOAD * (mask + 1)) resize();
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) return hasZero;
+        operations++;
+        int i = (int) mix(key) & mask, probe = 1;
+        for (long k; (k = get(i)) != 0; i = (i + 1) & mask, probe++) {
+            if (k == key) {
+                countProbe(probe);
+                return true;
+            }
+        }
+        countProbe(probe);
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public double loadFactor() {
+        return (double) size / capacity();
+    }
+
+    /**
+     * Mean number of slots inspected per add/contains.
+     */
+    public double averageProbeLength() {
+        return operations == 0 ? 0 : (double) probes / operations;
+    }
+
+    public int maxProbeLength() {
+        return maxProbe;
+    }
+
+    public int resizes() {
+        return resizes;
+    }
+
+    public String stats() {
+        return String.format("%d keys, capacity %d%s, load %.2f, probes avg %.2f max %d, %d resizes",
+                size, capacity(), offHeap ? " (off-heap)" : "", loadFactor(), averageProbeLength(), maxProbe,
+                resizes);
+    }
+
+    private void countProbe(int probe) {
+        probes += probe;
+        if (probe > maxProbe) maxProbe = probe;
+    }
+
+    private long get(int i) {
+        return offHeap ? chunks[i >>> CHUNK_BITS].get(i & CHUNK_MASK) : keys[i];
+    }
+
+    private void set(int i, long key) {
+        if (offHeap) chunks[i >>> CHUNK_BITS].put(i & CHUNK_MASK, key);
+        else keys[i] = key;
+    }
+
+    private void allocate(int capacity) {
+        mask = capacity - 1;
+        if (!offHeap) {
+            keys = new long[capacity];
+            return;
+        }
+        int chunkSize = Math.min(capacity, 1 << CHUNK_BITS);
+        chunks = new LongBuffer[capacity / chunkSize];
+        for (int c = 0; c < chunks.length; c++)
+            chunks[c] = ByteBuffer.allocateDirect(chunkSize * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    private void resize() {
+        if (mask + 1 >= MAX_CAPACITY) throw new IllegalStateException("LongHashSet is full: " + size + " keys");
+        long[] oldKeys = keys;
+        LongBuffer[] oldChunks = chunks;
+        int oldCapacity = mask + 1;
+        allocate(oldCapacity * 2);
+        resizes++;
+        for (int j = 0; j < oldCapacity; j++) {
+            long k = offHeap ? oldChunks[j >>> CHUNK_BITS].get(j & CHUNK_MASK) : oldKeys[j];
+            if (k == 0) continue;
+            int i = (int) mix(k) & mask;
+            while (get(i) != 0) i = (i + 1) & mask;
+            set(i, k);
+        }
+    }
+
+    private static int capacityFor(int expected) {
+        long needed = (long) Math.ceil(Math.max(expected, 16) / MAX_LOAD);
+        if (needed >= MAX_CAPACITY) return MAX_CAPACITY;
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+}
@@ -0,0 +1,92 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed map from 64-bit keys (e.g. Zobrist hashes) to int values, e.g. best known g-cost of a state.
+ * <br/>
+ * Same layout as {@link LongHashSet}: mixed power-of-two indexing, linear probing and 0 as the empty-key sentinel.
+ */
+public class LongIntHashMap {
+    private static final double MAX_LOAD = 0.75;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZero;
+    private int zeroValue;
+
+    public LongIntHashMap(int expected) {
+        long needed = (long) Math.ceil(Math.max(expected, 16) / MAX_LOAD);
+        int capacity = needed >= 1 << 30 ? 1 << 30 : Integer.highestOneBit((int) needed - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Value stored for 'key', or 'missing' if there is none.
+     */
+    public int get(long key, int missing) {
+        if (key == 0) return hasZero ? zeroValue : missing;
+        for (int i = (int) LongHashSet.mix(key) & mask; keys[i] != 0; i = (i + 1) & mask)
+            if (keys[i] == key) return values[i];
+        return missing;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) return hasZero;
+        for (int i = (int) LongHashSet.mix(key) & mask; keys[i] != 0; i = (i + 1) & mask)
+            if (keys[i] == key) return true;
+        return false;
+    }
+
+    public void put(long key, int value) {
+        if (key == 0) {
+            if (!hasZero) size++;
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+        int i = (int) LongHashSet.mix(key) & mask;
+        for (; keys[i] != 0; i = (i + 1) & mask)
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > MAX_LOAD * keys.length) resize();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double loadFactor() {
+        return (double) size / keys.length;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    private void resize() {
+        if (keys.length >= 1 << 30) throw new IllegalStateException("LongIntHashMap is full: " + size + " keys");
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == 0) continue;
+            int i = (int) LongHashSet.mix(oldKeys[j]) & mask;
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+}
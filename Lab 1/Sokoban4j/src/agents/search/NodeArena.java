@@ -0,0 +1,199 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage for search nodes, referred to by int handles.
+ * <br/>
+ * Each node costs 16 bytes: parent handle, f-value, packed player position + 2-bit direction and a reference into
+ * a shared pool of box sets. Box sets are interned by their hash, so player moves (and transpositions reaching the
+ * same box configuration) share a single copy of the box positions.
+ * <br/>
+ * Positions are packed as {@code (x & 0xFF) | (y & 0xFF) << 8}, same as MyAgent box encoding.
+ * <br/>
+ * In verifying mode interning also compares box positions on a hash match, so two box sets colliding on their 64-bit
+ * hash get separate pool entries instead of silently sharing one.
+ */
+public class NodeArena {
+    public static final int NONE = -1;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final int boxCount;
+    private final boolean verify;
+
+    // Node columns
+    private int[] parent, f, move, boxRef;
+    private int size;
+
+    // Box set pool, set r occupies pool[r * boxCount, (r + 1) * boxCount)
+    private short[] pool;
+    private long[] setHash;
+    private int sets;
+
+    // Intern table: box set hash -> set reference + 1 (0 == empty slot)
+    private long[] internKeys;
+    private int[] internRefs;
+
+    public NodeArena(int boxCount) {
+        this(boxCount, false);
+    }
+
+    /**
+     * @param verify TRUE == compare box positions, not only hashes, when interning
+     */
+    public NodeArena(int boxCount, boolean verify) {
+        this.boxCount = boxCount;
+        this.verify = verify;
+        parent = new int[DEFAULT_CAPACITY];
+        f = new int[DEFAULT_CAPACITY];
+        move = new int[DEFAULT_CAPACITY];
+        boxRef = new int[DEFAULT_CAPACITY];
+        pool = new short[DEFAULT_CAPACITY * Math.max(boxCount, 1)];
+        setHash = new long[DEFAULT_CAPACITY];
+        internKeys = new long[DEFAULT_CAPACITY];
+        internRefs = new int[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Adds a node and returns its handle.
+     * @param parent handle of the parent node or {@link #NONE}
+     * @param dir direction index (0..3) of the action leading to this node
+     * @param player packed player position
+     */
+    public int add(int parent, int dir, int player, int f, int boxRef) {
+        if (size == this.parent.length) growNodes();
+        int n = size++;
+        this.parent[n] = parent;
+        this.f[n] = f;
+        this.move[n] = player << 2 | (dir & 3);
+        this.boxRef[n] = boxRef;
+        return n;
+    }
+
+    /**
+     * Returns the reference of the box set 'boxes' with hash 'hash', copying it into the pool if not yet present.
+     */
+    public int intern(short[] boxes, long hash) {
+        int mask = internKeys.length - 1;
+        int i = (int) LongHashSet.mix(hash) & mask;
+        while (internRefs[i] != 0) {
+            if (internKeys[i] == hash && (!verify || sameSet(internRefs[i] - 1, boxes))) return internRefs[i] - 1;
+            i = (i + 1) & mask;
+        }
+        if (sets == setHash.length) growSets();
+        int ref = sets++;
+        System.arraycopy(boxes, 0, pool, ref * boxCount, boxCount);
+        setHash[ref] = hash;
+        internKeys[i] = hash;
+        internRefs[i] = ref + 1;
+        if (sets * 2 > internKeys.length) growIntern();
+        return ref;
+    }
+
+    public int parent(int node) {
+        return parent[node];
+    }
+
+    public int f(int node) {
+        return f[node];
+    }
+
+    public int dir(int node) {
+        return move[node] & 3;
+    }
+
+    public int player(int node) {
+        return move[node] >>> 2;
+    }
+
+    public int boxRef(int node) {
+        return boxRef[node];
+    }
+
+    public long hashBox(int node) {
+        return setHash[boxRef[node]];
+    }
+
+    /**
+     * Copies box set 'ref' into 'dst' (of length at least boxCount).
+     */
+    public void boxes(int ref, short[] dst) {
+        System.arraycopy(pool, ref * boxCount, dst, 0, boxCount);
+    }
+
+    /**
+     * TRUE if box set 'ref' occupies exactly the cells of 'occupied' (index x * height + y), with the box on cell
+     * 'from' moved to cell 'to' (both -1 for no move). Box order does not matter.
+     */
+    public boolean sameBoxes(int ref, BitBoard occupied, int from, int to, int height) {
+        for (int i = ref * boxCount, end = i + boxCount; i < end; i++) {
+            int cell = (pool[i] & 0xFF) * height + ((pool[i] >> 8) & 0xFF);
+            if (cell != to && (cell == from || !occupied.get(cell))) return false;
+        }
+        return true;
+    }
+
+    // TRUE if box set 'ref' holds the same positions as 'boxes', in any order
+    private boolean sameSet(int ref, short[] boxes) {
+        int base = ref * boxCount, end = base + boxCount;
+        for (short b : boxes) {
+            int i = base;
+            while (i < end && pool[i] != b) i++;
+            if (i == end) return false;
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int boxSets() {
+        return sets;
+    }
+
+    /**
+     * Approximate number of bytes held by the arena.
+     */
+    public long memoryBytes() {
+        return 16L * parent.length + 2L * pool.length + 8L * setHash.length + 12L * internKeys.length;
+    }
+
+    private void growNodes() {
+        int n = grownLength(parent.length);
+        parent = Arrays.copyOf(parent, n);
+        f = Arrays.copyOf(f, n);
+        move = Arrays.copyOf(move, n);
+        boxRef = Arrays.copyOf(boxRef, n);
+    }
+
+    private void growSets() {
+        int n = grownLength(setHash.length);
+        if ((long) n * boxCount > Integer.MAX_VALUE) n = Integer.MAX_VALUE / Math.max(boxCount, 1);
+        if (n <= sets) throw new OutOfMemoryError("Box set pool exhausted");
+        setHash = Arrays.copyOf(setHash, n);
+        pool = Arrays.copyOf(pool, n * boxCount);
+    }
+
+    private void growIntern() {
+        long[] oldKeys = internKeys;
+        int[] oldRefs = internRefs;
+        internKeys = new long[oldKeys.length * 2];
+        internRefs = new int[oldRefs.length * 2];
+        int mask = internKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldRefs[j] == 0) continue;
+            int i = (int) LongHashSet.mix(oldKeys[j]) & mask;
+            while (internRefs[i] != 0) i = (i + 1) & mask;
+            internKeys[i] = oldKeys[j];
+            internRefs[i] = oldRefs[j];
+        }
+    }
+
+    private static int grownLength(int length) {
+        long n = length + (length >> 1);
+        if (n > Integer.MAX_VALUE - 8) n = Integer.MAX_VALUE - 8;
+        if (n <= length) throw new OutOfMemoryError("Node arena exhausted");
+        return (int) n;
+    }
+}
@@ -0,0 +1,96 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Growable in-memory block of fixed-width records of longs, sorted and deduplicated before it is spilled to a
+ * {@link RecordFile}.
+ * <br/>
+ * Records compare as in {@link RecordFile}: unsigned words, the low tag bits of the last word not being part of the
+ * key. Sorting is a bottom-up merge sort over whole records, so no index arrays or objects are needed.
+ */
+public class RecordBuffer {
+    private static final int INITIAL_RECORDS = 256;
+
+    private final int width;
+    private final long keyMask;
+    private long[] data, tmp;
+    private int count;
+
+    public RecordBuffer(int width, int tagBits) {
+        this.width = width;
+        this.keyMask = tagBits == 0 ? -1L : -1L << tagBits;
+        data = new long[INITIAL_RECORDS * width];
+    }
+
+    public void add(long[] src, int off) {
+        if ((count + 1) * width > data.length) data = Arrays.copyOf(data, data.length * 2);
+        System.arraycopy(src, off, data, count * width, width);
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Backing array, record i occupies [i * width, (i + 1) * width).
+     */
+    public long[] data() {
+        return data;
+    }
+
+    public void clear() {
+        count = 0;
+        // Release big blocks, buffers of buckets no longer filled would keep them otherwise
+        if (data.length > INITIAL_RECORDS * width * 64) data = new long[INITIAL_RECORDS * width];
+        tmp = null;
+    }
+
+    /**
+     * Sorts the records and keeps the first (lowest tag) of every key; returns the number of records dropped.
+     */
+    public int sortUnique() {
+        if (tmp == null || tmp.length < count * width) tmp = new long[count * width];
+        long[] src = data, dst = tmp;
+        for (int run = 1; run < count; run *= 2) {
+            for (int lo = 0; lo < count; lo += 2 * run) {
+                int mid = Math.min(lo + run, count), hi = Math.min(lo + 2 * run, count);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi)
+                    System.arraycopy(src, (RecordFile.compare(src, i * width, src, j * width, width) <= 0
+                            ? i++ : j++) * width, dst, (k++) * width, width);
+                System.arraycopy(src, i * width, dst, k * width, (mid - i) * width);
+                k += mid - i;
+                System.arraycopy(src, j * width, dst, k * width, (hi - j) * width);
+            }
+            long[] t = src;
+            src = dst;
+            dst = t;
+        }
+        data = src;
+        tmp = dst;
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique > 0 && sameKey(data, (unique - 1) * width, i * width)) continue;
+            if (unique != i) System.arraycopy(data, i * width, data, unique * width, width);
+            unique++;
+        }
+        int dropped = count - unique;
+        count = unique;
+        return dropped;
+    }
+
+    /**
+     * Writes the records, sorted, to a new file at 'writer'.
+     */
+    public RecordFile write(RecordFile.Writer writer) {
+        for (int i = 0; i < count; i++) writer.add(data, i * width);
+        return writer.finish();
+    }
+
+    private boolean sameKey(long[] a, int i, int j) {
+        for (int w = 0; w < width - 1; w++) if (a[i + w] != a[j + w]) return false;
+        return ((a[i + width - 1] ^ a[j + width - 1]) & keyMask) == 0;
+    }
+}
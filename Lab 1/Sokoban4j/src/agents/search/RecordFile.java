@@ -0,0 +1,217 @@
+package agents.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sorted, immutable file of fixed-width records of longs, read through memory mapping.
+ * <br/>
+ * Records compare as sequences of unsigned words. The low {@code tagBits} bits of a record's last word are a tag
+ * carried along with the key but ignored by lookups, so records differing only in their tag sort next to each other.
+ * Files are written once through a {@link Writer} in ascending order and mapped in windows of at most 1 GB, so they
+ * may exceed both the heap and the 2 GB limit of a single mapping. Lookups are binary searches, or gallops from a
+ * {@link Cursor} when the keys come in ascending order.
+ */
+public class RecordFile {
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final Path path;
+    private final int width;
+    private final long tagMask;
+    private final long count;
+    private final long perWindow;
+    private final MappedByteBuffer[] windows;
+
+    private RecordFile(Path path, int width, int tagBits, long count) throws IOException {
+        this.path = path;
+        this.width = width;
+        this.tagMask = tagBits == 0 ? 0 : -1L >>> (64 - tagBits);
+        this.count = count;
+        long recordBytes = 8L * width;
+        perWindow = Math.max(1, WINDOW_BYTES / recordBytes);
+        windows = new MappedByteBuffer[(int) ((count + perWindow - 1) / perWindow)];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int w = 0; w < windows.length; w++) {
+                long first = w * perWindow, records = Math.min(perWindow, count - first);
+                windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, first * recordBytes, records * recordBytes);
+            }
+        }
+    }
+
+    /**
+     * Starts a file of 'width'-word records at 'path'; records must be added in ascending order.
+     */
+    public static Writer writer(Path path, int width, int tagBits) {
+        return new Writer(path, width, tagBits);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public long bytes() {
+        return 8L * width * count;
+    }
+
+    public long word(long record, int j) {
+        return windows[(int) (record / perWindow)].getLong((int) ((record % perWindow) * width + j) * 8);
+    }
+
+    /**
+     * Copies record 'record' into dst[off, off + width).
+     */
+    public void get(long record, long[] dst, int off) {
+        MappedByteBuffer window = windows[(int) (record / perWindow)];
+        int base = (int) ((record % perWindow) * width) * 8;
+        for (int j = 0; j < width; j++) dst[off + j] = window.getLong(base + 8 * j);
+    }
+
+    /**
+     * Index of the record with the key of src[off, off + width), or -1.
+     */
+    public long find(long[] src, int off) {
+        long lo = 0, hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (compareKey(mid, src, off) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo < count && compareKey(lo, src, off) == 0 ? lo : -1;
+    }
+
+    /**
+     * Tag of record 'record'.
+     */
+    public long tag(long record) {
+        return word(record, width - 1) & tagMask;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Deletes the file if the platform allows it while mapped: POSIX systems do and the mapping stays readable until
+     * it is garbage collected; Windows refuses until the mapping is released, then the file is left for the caller to
+     * clean up with its directory.
+     */
+    public void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped
+        }
+    }
+
+    // Compares the key of record 'record' with the key of src[off, off + width)
+    private int compareKey(long record, long[] src, int off) {
+        for (int j = 0; j < width; j++) {
+            long mask = j == width - 1 ? ~tagMask : -1L;
+            int c = Long.compareUnsigned(word(record, j) & mask, src[off + j] & mask);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two records by key and tag, as unsigned words.
+     */
+    public static int compare(long[] a, int aOff, long[] b, int bOff, int width) {
+        for (int j = 0; j < width; j++) {
+            int c = Long.compareUnsigned(a[aOff + j], b[bOff + j]);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    /**
+     * Forward-only position in the file for lookups of ascending keys.
+     */
+    public class Cursor {
+        private long pos;
+
+        /**
+         * TRUE if a record with the key of src[off, off + width) exists at or after the cursor, which moves to the
+         * first record not below that key. Gallops, so a run of lookups costs O(k log(n / k)) word reads.
+         */
+        public boolean seek(long[] src, int off) {
+            long lo = pos, hi = pos, step = 1;
+            while (hi < count && compareKey(hi, src, off) < 0) {
+                lo = hi + 1;
+                hi = Math.min(count, hi + step);
+                step <<= 1;
+            }
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (compareKey(mid, src, off) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            pos = lo;
+            return pos < count && compareKey(pos, src, off) == 0;
+        }
+
+        public boolean hasNext() {
+            return pos < count;
+        }
+
+        /**
+         * Copies the record at the cursor into dst[off, off + width) and moves past it.
+         */
+        public void next(long[] dst, int off) {
+            get(pos++, dst, off);
+        }
+    }
+
+    /**
+     * Sequential writer of a record file.
+     */
+    public static class Writer {
+        private final Path path;
+        private final int width, tagBits;
+        private final DataOutputStream out;
+        private long count;
+
+        private Writer(Path path, int width, int tagBits) {
+            this.path = path;
+            this.width = width;
+            this.tagBits = tagBits;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void add(long[] src, int off) {
+            try {
+                for (int j = 0; j < width; j++) out.writeLong(src[off + j]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count++;
+        }
+
+        /**
+         * Closes the file and maps it for reading.
+         */
+        public RecordFile finish() {
+            try {
+                out.close();
+                return new RecordFile(path, width, tagBits, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
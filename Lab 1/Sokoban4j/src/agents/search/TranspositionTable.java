@@ -0,0 +1,135 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size table from 64-bit state hashes to the best known lower bound on their cost-to-go, for depth-first
+ * searches such as IDA*.
+ * <br/>
+ * States on the current search path are flagged with {@link #enter(long, int)} / {@link #leave(long, int)} so cycles
+ * can be cut with {@link #onPath(long)}; such entries are never evicted. Slots are 2-way set-associative like
+ * {@link VerdictCache}; when both slots of a set are taken, the entry with the lower bound (less information) is
+ * replaced, and if both are on the path the new entry is dropped. Losing an entry only costs re-search.
+ */
+public class TranspositionTable {
+    public static final int DEFAULT_CAPACITY = 1 << 21;
+
+    private static final byte VALID = 1, ON_PATH = 2;
+
+    private final long[] keys;
+    private final int[] bounds;
+    private final byte[] flags;
+    private final int setMask;
+    private int size;
+
+    // Statistics
+    private long hits, misses, evictions, dropped;
+
+    public TranspositionTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of entries, rounded up to a power of two (at least 2)
+     */
+    public TranspositionTable(int capacity) {
+        int slots = capacity <= 2 ? 2 : capacity >= 1 << 30 ? 1 << 30 : Integer.highestOneBit(capacity - 1) << 1;
+        keys = new long[slots];
+        bounds = new int[slots];
+        flags = new byte[slots];
+        setMask = (slots >> 1) - 1;
+    }
+
+    /**
+     * Stored lower bound of 'key', or 'missing' if there is none.
+     */
+    public int get(long key, int missing) {
+        int j = find(key);
+        if (j < 0) {
+            misses++;
+            return missing;
+        }
+        hits++;
+        return bounds[j];
+    }
+
+    public boolean onPath(long key) {
+        int j = find(key);
+        return j >= 0 && (flags[j] & ON_PATH) != 0;
+    }
+
+    /**
+     * Flags 'key' as being on the current path, storing 'bound' if it improves on the known one.
+     */
+    public void enter(long key, int bound) {
+        int j = store(key, bound);
+        if (j >= 0) flags[j] |= ON_PATH;
+    }
+
+    /**
+     * Clears the path flag of 'key' and stores 'bound' if it improves on the known one.
+     */
+    public void leave(long key, int bound) {
+        int j = store(key, bound);
+        if (j >= 0) flags[j] &= ~ON_PATH;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long memoryBytes() {
+        return keys.length * (long) (Long.BYTES + Integer.BYTES + 1);
+    }
+
+    public void clear() {
+        Arrays.fill(flags, (byte) 0);
+        size = 0;
+    }
+
+    public String stats() {
+        return String.format("%d/%d entries, %d hits, %d misses, %d evictions, %d dropped",
+                size, capacity(), hits, misses, evictions, dropped);
+    }
+
+    private int find(long key) {
+        int i = slot(key);
+        for (int j = i; j < i + 2; j++) if ((flags[j] & VALID) != 0 && keys[j] == key) return j;
+        return -1;
+    }
+
+    // Slot holding 'key' afterwards, or -1 if its set is pinned by the path
+    private int store(long key, int bound) {
+        int j = find(key);
+        if (j >= 0) {
+            if (bound > bounds[j]) bounds[j] = bound;
+            return j;
+        }
+        int i = slot(key);
+        if ((flags[i] & VALID) == 0) j = i;
+        else if ((flags[i + 1] & VALID) == 0) j = i + 1;
+        else {
+            boolean pinned0 = (flags[i] & ON_PATH) != 0, pinned1 = (flags[i + 1] & ON_PATH) != 0;
+            if (pinned0 && pinned1) {
+                dropped++;
+                return -1;
+            }
+            j = pinned0 ? i + 1 : pinned1 ? i : bounds[i] <= bounds[i + 1] ? i : i + 1;
+            evictions++;
+            size--;
+        }
+        size++;
+        keys[j] = key;
+        bounds[j] = bound;
+        flags[j] = VALID;
+        return j;
+    }
+
+    private int slot(long key) {
+        return ((int) LongHashSet.mix(key) & setMask) << 1;
+    }
+}
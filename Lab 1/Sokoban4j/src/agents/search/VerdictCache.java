@@ -0,0 +1,131 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size cache from 64-bit keys (e.g. Zobrist hashes) to boolean verdicts, e.g. "this box configuration is a
+ * deadlock".
+ * <br/>
+ * 2-way set-associative: a key can only live in the two slots of the set selected by its mixed hash. Each slot is a
+ * long key plus one flag byte (valid, verdict, referenced), so an entry takes 9 bytes and no objects are allocated.
+ * When both slots of a set are taken, a CLOCK-style reference bit picks the victim: hits mark a slot referenced, and
+ * an unreferenced slot is evicted first (when both are referenced, both bits are cleared and the older one goes).
+ * <br/>
+ * Dropping an entry only costs a recomputation, so the cache never grows beyond its initial capacity.
+ */
+public class VerdictCache {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    /**
+     * Returned by {@link #get(long)} for keys that are not cached.
+     */
+    public static final int MISS = -1;
+
+    private static final byte VALID = 1, VERDICT = 2, REFERENCED = 4, OLDER = 8;
+
+    private final long[] keys;
+    private final byte[] flags;
+    private final int setMask;
+    private int size;
+
+    // Statistics
+    private long hits, misses, evictions;
+
+    public VerdictCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of entries, rounded up to a power of two (at least 2)
+     */
+    public VerdictCache(int capacity) {
+        int slots = capacity <= 2 ? 2 : capacity >= 1 << 30 ? 1 << 30 : Integer.highestOneBit(capacity - 1) << 1;
+        keys = new long[slots];
+        flags = new byte[slots];
+        setMask = (slots >> 1) - 1;
+    }
+
+    /**
+     * 1 or 0 for a cached TRUE/FALSE verdict of 'key', {@link #MISS} otherwise.
+     */
+    public int get(long key) {
+        int i = slot(key);
+        for (int j = i; j < i + 2; j++)
+            if ((flags[j] & VALID) != 0 && keys[j] == key) {
+                hits++;
+                flags[j] |= REFERENCED;
+                return (flags[j] & VERDICT) != 0 ? 1 : 0;
+            }
+        misses++;
+        return MISS;
+    }
+
+    public void put(long key, boolean verdict) {
+        int i = slot(key), victim = -1;
+        for (int j = i; j < i + 2; j++)
+            if ((flags[j] & VALID) != 0 && keys[j] == key) {
+                victim = j;
+                break;
+            }
+        if (victim < 0) victim = (flags[i] & VALID) == 0 ? i : (flags[i + 1] & VALID) == 0 ? i + 1 : evict(i);
+        if ((flags[victim] & VALID) == 0) size++;
+        keys[victim] = key;
+        flags[victim] = (byte) (VALID | (verdict ? VERDICT : 0));
+        // The other slot of the set is now the older one
+        flags[victim ^ 1] |= OLDER;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    public double hitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    public long memoryBytes() {
+        return keys.length * (long) (Long.BYTES + 1);
+    }
+
+    public void clear() {
+        Arrays.fill(flags, (byte) 0);
+        size = 0;
+    }
+
+    public String stats() {
+        return String.format("%d/%d entries, hit rate %.2f (%d hits, %d misses), %d evictions",
+                size, capacity(), hitRate(), hits, misses, evictions);
+    }
+
+    // Picks the slot to overwrite in the full set starting at 'i'
+    private int evict(int i) {
+        evictions++;
+        boolean ref0 = (flags[i] & REFERENCED) != 0, ref1 = (flags[i + 1] & REFERENCED) != 0;
+        if (ref0 == ref1) {
+            // Second chance used up by both (or neither), fall back to the older entry
+            flags[i] &= ~REFERENCED;
+            flags[i + 1] &= ~REFERENCED;
+            return (flags[i] & OLDER) != 0 ? i : i + 1;
+        }
+        return ref0 ? i + 1 : i;
+    }
+
+    private int slot(long key) {
+        return ((int) LongHashSet.mix(key) & setMask) << 1;
+    }
+}
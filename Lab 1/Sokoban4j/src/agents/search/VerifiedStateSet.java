@@ -0,0 +1,101 @@
+package agents.search;
+
+/**
+ * Visited set of search states that confirms every 64-bit key match against the stored state.
+ * <br/>
+ * Each slot holds the key and the handle of the {@link NodeArena} node that added it. A lookup that finds the key
+ * compares the node's player and box positions with the candidate state, so a hash collision between two different
+ * states is counted and probed past instead of pruning the second one. Keys may therefore occur more than once.
+ * <br/>
+ * Costs 12 bytes per slot instead of the 8 of {@link LongHashSet}, plus one box comparison per duplicate found.
+ */
+public class VerifiedStateSet {
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double MAX_LOAD = 0.75;
+
+    private final NodeArena nodes;
+    // Board height, box cells are indexed x * height + y
+    private final int height;
+    private long[] keys;
+    // Node handle + 1 per slot, 0 == empty
+    private int[] refs;
+    private int mask;
+    private int size;
+
+    // Statistics: key matches that turned out to be different states
+    private long collisions;
+
+    /**
+     * @param nodes arena holding the states of all added nodes
+     * @param height board height of the cell indices passed to {@link #contains}
+     * @param expected number of states the set should hold without resizing
+     */
+    public VerifiedStateSet(NodeArena nodes, int height, int expected) {
+        this.nodes = nodes;
+        this.height = height;
+        long needed = (long) Math.ceil(Math.max(expected, 16) / MAX_LOAD);
+        int capacity = needed >= MAX_CAPACITY ? MAX_CAPACITY : Integer.highestOneBit((int) needed - 1) << 1;
+        keys = new long[capacity];
+        refs = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * TRUE if the state with key 'key', packed player position 'player' and the boxes of 'occupied' (with the box
+     * on cell 'from' moved to cell 'to', both -1 for no move) was added.
+     */
+    public boolean contains(long key, int player, BitBoard occupied, int from, int to) {
+        for (int i = (int) LongHashSet.mix(key) & mask; refs[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] != key) continue;
+            int node = refs[i] - 1;
+            if (nodes.player(node) == player && nodes.sameBoxes(nodes.boxRef(node), occupied, from, to, height))
+                return true;
+            collisions++;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the state of 'node' under 'key'; the caller checks {@link #contains} first.
+     */
+    public void add(long key, int node) {
+        int i = (int) LongHashSet.mix(key) & mask;
+        while (refs[i] != 0) i = (i + 1) & mask;
+        keys[i] = key;
+        refs[i] = node + 1;
+        if (++size > MAX_LOAD * (mask + 1)) resize();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double loadFactor() {
+        return (double) size / (mask + 1);
+    }
+
+    public long collisions() {
+        return collisions;
+    }
+
+    public String stats() {
+        return String.format("%d states, capacity %d, load %.2f, %d key collisions", size, mask + 1, loadFactor(),
+                collisions);
+    }
+
+    private void resize() {
+        if (mask + 1 >= MAX_CAPACITY) throw new IllegalStateException("VerifiedStateSet is full: " + size + " states");
+        long[] oldKeys = keys;
+        int[] oldRefs = refs;
+        keys = new long[oldKeys.length * 2];
+        refs = new int[oldRefs.length * 2];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldRefs[j] == 0) continue;
+            int i = (int) LongHashSet.mix(oldKeys[j]) & mask;
+            while (refs[i] != 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            refs[i] = oldRefs[j];
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package game;
+
+/**
+ * Time limit of an agent on a level, together with a token the game cancels once the agent is stopped.
+ * <p>
+ * The game tells the agent its deadline ({@link IAgent#setDeadline(Deadline)}) when the level starts; it is the moment
+ * the game reports TIMEOUT, so an agent wanting its plan played out in time should finish a little earlier. Thinking
+ * code polls {@link #expired()} to wrap up with the best answer at hand and {@link #isCancelled()} to drop its work,
+ * as nothing it returns is used any more.
+ */
+public final class Deadline {
+
+    private final long deadlineMillis;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Deadline at 'deadlineMillis' of {@link System#currentTimeMillis()}; {@link Long#MAX_VALUE} == none.
+     */
+    public Deadline(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Token without a time limit, which can still be cancelled.
+     */
+    public static Deadline none() {
+        return new Deadline(Long.MAX_VALUE);
+    }
+
+    /**
+     * Deadline 'timeoutMillis' from now; non-positive number == none.
+     */
+    public static Deadline after(long timeoutMillis) {
+        return timeoutMillis > 0 ? new Deadline(System.currentTimeMillis() + timeoutMillis) : none();
+    }
+
+    public boolean isBounded() {
+        return deadlineMillis != Long.MAX_VALUE;
+    }
+
+    public long deadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Milliseconds left, 0 once expired; {@link Long#MAX_VALUE} if there is no time limit.
+     */
+    public long remainingMillis() {
+        if (!isBounded()) return Long.MAX_VALUE;
+        return Math.max(0, deadlineMillis - System.currentTimeMillis());
+    }
+
+    public boolean expired() {
+        return isBounded() && System.currentTimeMillis() >= deadlineMillis;
+    }
+
+    /**
+     * Called by the game when the agent is stopped (victory, timeout, termination).
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        return isBounded() ? "Deadline[" + remainingMillis() + " ms left" + (cancelled ? ", cancelled]" : "]")
+                : cancelled ? "Deadline[none, cancelled]" : "Deadline[none]";
+    }
+}
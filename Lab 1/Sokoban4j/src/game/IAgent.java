@@ -10,6 +10,13 @@ public interface IAgent {
 	 * Agent got into a new level.
 	 */
 	public void newLevel();
+
+	/**
+	 * Deadline of the level, told after {@link #newLevel()} by games enforcing a timeout; the game cancels it once the
+	 * agent is stopped. Agents may ignore it.
+	 */
+	public default void setDeadline(Deadline deadline) {
+	}
 	
 	/**
 	 * An agent receives current state of the board.
@@ -19,7 +26,10 @@ public interface IAgent {
 	
 	/**
 	 * An agent is queried where to move next. 
-	 * @return
+	 * <p>
+	 * May block while the agent is thinking, but not past its deadline (see {@link #setDeadline(Deadline)}) or an
+	 * interrupt of the calling game thread.
+	 * @return next direction; NULL == none yet, the game checks its timeout and asks again; NONE == the agent gave up
 	 */
 	public EDirection act();
 	
@@ -32,5 +42,20 @@ public interface IAgent {
 	 * Terminate the agent as the game has finished.
 	 */
 	public void stop();
+
+	/**
+	 * Waits up to 'timeoutMillis' for the threads of the agent to end after {@link #stop()} or {@link #victory()};
+	 * TRUE if none is left. Runners reusing the agent's classes for another level call it first.
+	 */
+	public default boolean awaitStopped(long timeoutMillis) throws InterruptedException {
+		return true;
+	}
+
+	/**
+	 * Counters of the agent's last search, exported with the result; NULL if the agent does not track any.
+	 */
+	public default SearchMetrics getMetrics() {
+		return null;
+	}
 	
 }
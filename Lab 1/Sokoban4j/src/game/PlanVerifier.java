@@ -0,0 +1,140 @@
+package game;
+
+import java.util.Arrays;
+import java.util.List;
+
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+import game.board.compact.CTile;
+
+/**
+ * Checks plans against a level without playing them through {@link SokobanSim}.
+ * <p>
+ * The level is flattened once into arrays indexed by x * height + y: the walls, the box numbers each square accepts
+ * (as a bit mask, so numbered boxes and their places work as in {@link BoardCompact}) and the initial boxes. A plan is
+ * then replayed on a copy of the box array with no objects per step, with the rules of the game: a step moves the
+ * player onto a free square or pushes a box onto one. As in the game, steps after the level is solved are not
+ * played. The verifier is immutable, so one instance may check any number of plans from several threads.
+ */
+public class PlanVerifier {
+
+    /**
+     * Outcome of checking one plan.
+     */
+    public static class Result {
+        /**
+         * TRUE if the level was solved.
+         */
+        public final boolean victory;
+        /**
+         * Steps played, up to the victory or the illegal step.
+         */
+        public final int steps;
+        /**
+         * Steps among them that pushed a box.
+         */
+        public final int pushes;
+        /**
+         * Index of the first step that could not be played (a wall, a blocked box, NONE or NULL); -1 == none.
+         */
+        public final int illegalStep;
+
+        Result(boolean victory, int steps, int pushes, int illegalStep) {
+            this.victory = victory;
+            this.steps = steps;
+            this.pushes = pushes;
+            this.illegalStep = illegalStep;
+        }
+
+        @Override
+        public String toString() {
+            return (victory ? "VICTORY" : illegalStep >= 0 ? "ILLEGAL step " + illegalStep : "UNSOLVED")
+                   + " after " + steps + " steps (" + pushes + " pushes)";
+        }
+    }
+
+    private final int width, height;
+    private final boolean[] walls;
+    // Bit b set if box number b counts as placed on the square
+    private final int[] accepts;
+    // Box number on every square, 0 == none
+    private final byte[] boxes;
+    private final int playerX, playerY, boxCount, boxesInPlace;
+
+    public PlanVerifier(BoardCompact board) {
+        width = board.width();
+        height = board.height();
+        walls = new boolean[width * height];
+        accepts = new int[width * height];
+        boxes = new byte[width * height];
+        int count = 0, inPlace = 0;
+        for (int x = 0; x < width; ++x) {
+            for (int y = 0; y < height; ++y) {
+                int tile = board.tile(x, y), i = x * height + y;
+                walls[i] = CTile.isWall(tile);
+                for (int b = 1; b <= 6; ++b)
+                    if (CTile.forBox(b, tile) || CTile.forAnyBox(tile)) accepts[i] |= 1 << b;
+                if (CTile.isSomeBox(tile)) {
+                    boxes[i] = (byte) CTile.getBoxNum(tile);
+                    ++count;
+                    if ((accepts[i] & 1 << boxes[i]) != 0) ++inPlace;
+                }
+            }
+        }
+        playerX = board.playerX;
+        playerY = board.playerY;
+        boxCount = count;
+        boxesInPlace = inPlace;
+    }
+
+    /**
+     * Checks 'plan' on the board, which is left untouched; see {@link PlanVerifier}.
+     */
+    public static Result verify(BoardCompact board, List<EDirection> plan) {
+        return new PlanVerifier(board).verify(plan);
+    }
+
+    /**
+     * Replays 'plan' from the initial state of the level.
+     */
+    public Result verify(List<EDirection> plan) {
+        byte[] boxes = Arrays.copyOf(this.boxes, this.boxes.length);
+        int x = playerX, y = playerY, inPlace = boxesInPlace, steps = 0, pushes = 0;
+        for (EDirection dir : plan) {
+            if (inPlace == boxCount) break;
+            if (dir == null || dir == EDirection.NONE) return new Result(false, steps, pushes, steps);
+            int nextX = x + dir.dX, nextY = y + dir.dY;
+            if (!inside(nextX, nextY)) return new Result(false, steps, pushes, steps);
+            int next = nextX * height + nextY;
+            if (walls[next]) return new Result(false, steps, pushes, steps);
+            int box = boxes[next];
+            if (box != 0) {
+                int boxX = nextX + dir.dX, boxY = nextY + dir.dY;
+                if (!inside(boxX, boxY)) return new Result(false, steps, pushes, steps);
+                int target = boxX * height + boxY;
+                if (walls[target] || boxes[target] != 0) return new Result(false, steps, pushes, steps);
+                boxes[target] = (byte) box;
+                boxes[next] = 0;
+                if ((accepts[next] & 1 << box) != 0) --inPlace;
+                if ((accepts[target] & 1 << box) != 0) ++inPlace;
+                ++pushes;
+            }
+            x = nextX;
+            y = nextY;
+            ++steps;
+        }
+        return new Result(inPlace == boxCount, steps, pushes, -1);
+    }
+
+    /**
+     * TRUE if all of 'plan' is played and solves the level, i.e. no steps are left over.
+     */
+    public boolean solves(List<EDirection> plan) {
+        Result result = verify(plan);
+        return result.victory && result.steps == plan.size();
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+}
@@ -0,0 +1,64 @@
+package game;
+
+import java.util.Locale;
+
+/**
+ * Counters of one solve, filled in by a search engine and exported next to the game result.
+ * <br/>
+ * Engines only bump plain fields (no synchronization), the agent fills in the totals after the search. Counters an
+ * engine does not track stay 0. Heuristic time covers full evaluations (start state, matching solves and updates),
+ * not the O(1) incremental closest-goal updates. Rows are exported as CSV with {@link #CSV_HEADER} or as JSON.
+ */
+public class SearchMetrics {
+    /**
+     * Column names of {@link #toCsv()}, ';'-separated like the result files.
+     */
+    public static final String CSV_HEADER = "engine;expanded;generated;duplicates;simplePrunes;freezePrunes;"
+            + "corralPrunes;peakOpen;visitedSize;visitedLoad;heuristicMillis;wallMillis;cpuMillis;solutionLength";
+
+    public String engine = "";
+    // Nodes expanded, children created and children dropped as already visited
+    public long expanded, generated, duplicates;
+    // Children dropped as simple (dead square), freeze and corral deadlocks
+    public long simplePrunes, freezePrunes, corralPrunes;
+    public int peakOpen;
+    // Visited set size and load factor at the end of the search
+    public long visitedSize;
+    public double visitedLoad;
+    public long heuristicNanos;
+    public long wallMillis, cpuMillis;
+    // Length of the returned plan, -1 if none
+    public int solutionLength = -1;
+
+    /**
+     * Records the open list size, keeping the peak.
+     */
+    public void open(int size) {
+        if (size > peakOpen) peakOpen = size;
+    }
+
+    public void visited(long size, double load) {
+        visitedSize = size;
+        visitedLoad = load;
+    }
+
+    public String toCsv() {
+        return String.format(Locale.ROOT, "%s;%d;%d;%d;%d;%d;%d;%d;%d;%.6f;%.3f;%d;%d;%d",
+                engine, expanded, generated, duplicates, simplePrunes, freezePrunes, corralPrunes, peakOpen,
+                visitedSize, visitedLoad, heuristicNanos / 1e6, wallMillis, cpuMillis, solutionLength);
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"engine\":\"%s\",\"expanded\":%d,\"generated\":%d,\"duplicates\":%d,"
+                        + "\"simplePrunes\":%d,\"freezePrunes\":%d,\"corralPrunes\":%d,\"peakOpen\":%d,"
+                        + "\"visitedSize\":%d,\"visitedLoad\":%.6f,\"heuristicMillis\":%.3f,\"wallMillis\":%d,"
+                        + "\"cpuMillis\":%d,\"solutionLength\":%d}",
+                engine, expanded, generated, duplicates, simplePrunes, freezePrunes, corralPrunes, peakOpen,
+                visitedSize, visitedLoad, heuristicNanos / 1e6, wallMillis, cpuMillis, solutionLength);
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
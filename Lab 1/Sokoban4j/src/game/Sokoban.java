@@ -7,6 +7,7 @@ import java.util.List;
 import javax.swing.SwingUtilities;
 
 import agents.HumanAgent;
+import game.actions.EDirection;
 import game.board.oop.Board;
 import ui.SokobanFrame;
 import ui.SokobanView;
@@ -328,6 +329,17 @@ public class Sokoban {
 	public static SokobanResult simAgentLevel(
         String id, String levelFilePath, int levelNumber,
         int timeoutMillis, IAgent agent, boolean verbose, boolean optimal) {
+		return simAgentLevel(id, levelFilePath, levelNumber, timeoutMillis, agent, verbose, optimal, null);
+	}
+
+	/**
+	 * Same as {@link #simAgentLevel(String, String, int, int, IAgent, boolean, boolean)}, replaying a verified solution
+	 * from the {@link utils.SolutionStore} in 'solutionDir' if it has one and adding the agent's otherwise; 'solutionDir'
+	 * may be null.
+	 */
+	public static SokobanResult simAgentLevel(
+        String id, String levelFilePath, int levelNumber,
+        int timeoutMillis, IAgent agent, boolean verbose, boolean optimal, File solutionDir) {
 
 		// CREATE CONFIG
 		SokobanConfig config = new SokobanConfig();
@@ -344,10 +356,34 @@ public class Sokoban {
         config.timeoutMillis = timeoutMillis;
         config.verbose = verbose;
         config.requireOptimal = optimal;
+        config.solutionDir = solutionDir;
 		
 		return runAgentLevel(config);
 	}
 	
+	/**
+	 * Checks 'plan' on 'levelNumber' (1-based) level from file on 'levelFilePath' with a {@link PlanVerifier}, without
+	 * simulating the game.
+	 * 
+	 * @param levelFilePath file to load the level from
+	 * @param levelNumber 1-based; a level to check the plan on
+	 * @param plan directions to play from the initial state
+	 * @return whether the plan solves the level, how many steps were played and the first illegal one
+	 */
+	public static PlanVerifier.Result verifyPlan(String levelFilePath, int levelNumber, List<EDirection> plan) {
+		File levelFile = findFile(levelFilePath);
+		if (!levelFile.exists() || !levelFile.isFile())
+            throw new RuntimeException("Not a level file at '" + levelFile.getAbsolutePath() +
+                                       "'\nResolved from: " + levelFilePath);
+		Board board = null;
+		switch (determineLevelFormat(levelFile.getName())) {
+		case S4JL: board = Board.fromFileS4JL(levelFile, levelNumber); break;
+		case SOK: board = Board.fromFileSok(levelFile, levelNumber); break;
+		}
+		board.validate();
+		return PlanVerifier.verify(board.makeBoardCompact(), plan);
+	}
+	
 	// ----------------------
 	// VISUALIZED SIMULATIONS
 	// ----------------------
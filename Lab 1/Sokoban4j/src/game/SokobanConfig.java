@@ -47,6 +47,11 @@ public class SokobanConfig {
 
     public boolean requireOptimal = false;
 
+	/**
+	 * Directory of the {@link utils.SolutionStore} to replay verified solutions from and to add new ones to; NULL == none.
+	 */
+	public File solutionDir;
+
     public String levelFileName() {
         return levelFile.getName();
     }
@@ -2,6 +2,9 @@ package game;
 
 import java.io.*;
 import java.time.LocalDateTime;
+import java.util.List;
+
+import game.actions.EDirection;
 
 public class SokobanResult {
     public LocalDateTime dateTime;
@@ -14,6 +17,8 @@ public class SokobanResult {
 	private Throwable exception;
 	private int steps = 0;
 	private long simTimeMillis;
+    private SearchMetrics metrics;
+    private List<EDirection> solution;
     public String message;
 
     public SokobanResult(SokobanConfig config) {
@@ -97,6 +102,28 @@ public class SokobanResult {
 		this.simTimeMillis = simTimeMillis;
 	}
 
+	/**
+	 * Search counters reported by the agent, or NULL.
+	 */
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(SearchMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Steps the agent played to win, or NULL if it did not.
+	 */
+	public List<EDirection> getSolution() {
+		return solution;
+	}
+
+	public void setSolution(List<EDirection> solution) {
+		this.solution = solution;
+	}
+
 	/**
 	 * Exception caught during the simulation; 
 	 */
@@ -115,6 +142,8 @@ public class SokobanResult {
     
     static final String Filename = "levels.csv";
 
+    static final String MetricsFilename = "metrics.csv";
+
     static final String Headers =
         "datetime;id;levelFile;timeout;requireOptimal;levelNumber;result;steps;playTimeMillis";
 
@@ -135,6 +164,27 @@ public class SokobanResult {
             throw new RuntimeException("Failed to append to the result file: " +
                                        resultFile.getAbsolutePath());
 		}
+        if (metrics != null) outputMetrics(resultDir);
+    }
+
+    /**
+     * Appends the search metrics of this result to 'metrics.csv' in 'resultDir', keyed like the rows of 'levels.csv'.
+     */
+    public void outputMetrics(String resultDir) {
+        new File(resultDir).mkdirs();
+        File metricsFile = new File(resultDir, MetricsFilename);
+        boolean header = !metricsFile.exists();
+
+        try (PrintWriter writer = new PrintWriter(new FileOutputStream(metricsFile, true))) {
+            if (header) {
+                writer.println("datetime;id;levelFile;levelNumber;result;" + SearchMetrics.CSV_HEADER);
+            }
+            writer.println(dateTime + ";" + id + ";" + levelFile + ";" + level + ";" + result + ";" +
+                           metrics.toCsv());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to append to the metrics file: " +
+                                       metricsFile.getAbsolutePath());
+        }
     }
 
     void parse(String line) {
@@ -1,9 +1,14 @@
 package game;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import agents.ReplayAgent;
 import game.actions.EDirection;
 import game.actions.oop.*;
 import game.board.compact.BoardCompact;
 import game.board.oop.Board;
+import utils.SolutionStore;
 
 public class SokobanSim implements ISokobanGame, Runnable {
 	private SokobanConfig config;
@@ -23,8 +28,20 @@ public class SokobanSim implements ISokobanGame, Runnable {
 	// RESULT
 	
 	private SokobanResult result;
+
+	private Deadline deadline = Deadline.none();
 	
 	private int steps = 0;
+
+	// SOLUTION STORE
+
+	private SolutionStore store;
+
+	private BoardCompact initialBoard;
+
+	private boolean replayed;
+
+	private List<EDirection> played = new ArrayList<EDirection>();
 	
 	public SokobanSim(SokobanConfig config, Board board) {
 		this.config = config;
@@ -34,6 +51,16 @@ public class SokobanSim implements ISokobanGame, Runnable {
 		this.state = SokobanGameState.INIT;
         
         result = new SokobanResult(config);
+
+        if (config.solutionDir != null) {
+            store = SolutionStore.open(config.solutionDir);
+            initialBoard = board.makeBoardCompact();
+            List<EDirection> stored = store.lookup(initialBoard, config.requireOptimal);
+            if (stored != null) {
+                agent = new ReplayAgent(stored);
+                replayed = true;
+            }
+        }
 	}
 	
 	@Override
@@ -75,6 +102,8 @@ public class SokobanSim implements ISokobanGame, Runnable {
 			
 			try {
 				agent.newLevel();
+				if (config.timeoutMillis > 0) deadline = new Deadline(startTime + config.timeoutMillis);
+				agent.setDeadline(deadline);
 			} catch (Exception e) {
 				onAgentException(e);
 				return;
@@ -125,6 +154,7 @@ public class SokobanSim implements ISokobanGame, Runnable {
 					// PERFORM THE ACTION
 					agentAction.perform(board);
 					++steps;
+					played.add(whereToMove);
 					observe = true;
 				} else {
                     System.out.println("Agent returned an illegal move!");
@@ -141,6 +171,8 @@ public class SokobanSim implements ISokobanGame, Runnable {
     void stopSimulation(SokobanResultType resultType, SokobanGameState endState) {
 		result.setSimTimeMillis(System.currentTimeMillis() - startTime);
 		result.setResult(resultType);
+		result.setMetrics(agent.getMetrics());
+		deadline.cancel();
 		try {
 			agent.stop();
 		} catch (Exception e) {						
@@ -176,8 +208,17 @@ public class SokobanSim implements ISokobanGame, Runnable {
         } else if (config.requireOptimal)
             result.message = "warning: optimal move count is unknown";
 
+        if (replayed && result.message == null)
+            result.message = "replayed from the solution store";
         result.setResult(outcome);
         result.setSteps(steps);
+        result.setSolution(played);
+        // Only a plan of the known optimal length is stored as optimal, whatever the agent
+        if (store != null && !replayed)
+            store.record(initialBoard, played, outcome == SokobanResultType.VICTORY
+                                               && board.minMoves > 0 && steps == board.minMoves);
+        result.setMetrics(agent.getMetrics());
+        deadline.cancel();
         
 		try {
 			agent.victory();
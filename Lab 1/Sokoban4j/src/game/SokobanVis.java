@@ -274,6 +274,7 @@ public class SokobanVis implements ISokobanGame, Runnable {
 
 	private void onVictory() {
 		result.setResult(SokobanResultType.VICTORY);
+		result.setMetrics(agent.getMetrics());
 		try {
 			agent.victory();
 		} catch (Exception e) {
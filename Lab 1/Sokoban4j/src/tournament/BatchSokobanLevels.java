@@ -0,0 +1,224 @@
+package tournament;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import game.*;
+import game.board.oop.Board;
+import utils.S4JLReader;
+import utils.SokReader;
+
+/**
+ * Runs all levels of a level file inside this JVM, solving them concurrently on a pool of worker threads.
+ * <p>
+ * The level file is parsed once up front. Every worker loads the agent class through its own class loader, so agents
+ * keeping per-level state in static fields (as MyAgent does) cannot see each other, and reuses it for all of its
+ * levels so the compiled agent code stays warm. Levels are played headless ({@link SokobanSim}) with the configured
+ * timeout as their deadline; once it passes, the simulation stops the agent, interrupting its thinking thread, and an
+ * agent polling the interrupt hands its worker back. Once 'maxFail' levels failed, levels not started yet are skipped.
+ * <p>
+ * Results are appended to the same 'levels.csv' (and 'metrics.csv') as {@link RunSokobanLevels} as levels finish,
+ * followed by one 'summary.csv' row for the run.
+ */
+public class BatchSokobanLevels {
+    private final SokobanConfig config;
+    private final String agentClass;
+    private final String levelset;
+    private final File resultDir;
+    private final int maxFail;
+    private final int threads;
+
+    private final AtomicInteger failed = new AtomicInteger();
+    // Longest wait for a stopped agent to wind down before its classes are reused for the next level
+    private static final long STOP_WAIT_MILLIS = 1000;
+
+    // Agent class loader of each worker thread, replaced when a stopped agent keeps running
+    private final ThreadLocal<ClassLoader> loaders = ThreadLocal.withInitial(AgentClassLoader::new);
+
+    public BatchSokobanLevels(SokobanConfig config, String agentClass, String levelset,
+                              File resultDir, int maxFail, int threads) {
+        this.config = config;
+        this.agentClass = agentClass;
+        this.levelset = levelset;
+        this.resultDir = resultDir;
+        this.maxFail = maxFail;
+        this.threads = threads;
+    }
+
+    String idOrAgentClass() {
+        return config.id == null ? agentClass : config.id;
+    }
+
+    /**
+     * Solves all levels and returns their results in level order; skipped levels are left out.
+     */
+    public List<SokobanResult> run() {
+        LocalDateTime start = LocalDateTime.now();
+        File levelFile = Sokoban.findFile(levelset);
+        ELevelFormat format = ELevelFormat.getExpectedLevelFormat(levelFile);
+        List<Board> boards = loadBoards(levelFile, format, SokobanLevel.getLevelCount(levelFile));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread worker = new Thread(task, "BatchWorker");
+            worker.setDaemon(true);
+            return worker;
+        });
+        List<Future<SokobanResult>> futures = new ArrayList<>();
+        for (int i = 0; i < boards.size(); ++i) {
+            int level = i + 1;
+            Board board = boards.get(i);
+            futures.add(pool.submit(() -> solveLevel(levelFile, format, level, board)));
+        }
+        pool.shutdown();
+
+        List<SokobanResult> results = new ArrayList<>();
+        SokobanResult highest = null;
+        try {
+            for (Future<SokobanResult> future : futures) {
+                SokobanResult result = future.get();
+                if (result == null)
+                    continue;
+                results.add(result);
+                if (result.getResult() == SokobanResultType.VICTORY)
+                    highest = result;
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            throw new RuntimeException("Interrupted while waiting for the levels.", e);
+        } catch (ExecutionException e) {
+            pool.shutdownNow();
+            throw new RuntimeException("Level run failed.", e.getCause());
+        }
+
+        if (resultDir != null)
+            RunSokobanLevels.writeSummary(resultDir, start, idOrAgentClass(), levelset, config, maxFail, highest);
+        return results;
+    }
+
+    SokobanResult solveLevel(File levelFile, ELevelFormat format, int level, Board board) throws Exception {
+        if (maxFail > 0 && failed.get() >= maxFail)
+            return null;
+
+        IAgent agent = (IAgent) loaders.get().loadClass(agentClass).getConstructor().newInstance();
+        agent.init(config.requireOptimal, config.verbose);
+
+        SokobanConfig levelConfig = new SokobanConfig();
+        levelConfig.id = config.id == null ? agent.getClass().getSimpleName() : config.id;
+        levelConfig.agent = agent;
+        levelConfig.levelFile = levelFile;
+        levelConfig.levelFormat = format;
+        levelConfig.levelNumber = level;
+        levelConfig.visualization = false;
+        levelConfig.timeoutMillis = config.timeoutMillis;
+        levelConfig.verbose = config.verbose;
+        levelConfig.requireOptimal = config.requireOptimal;
+        levelConfig.solutionDir = config.solutionDir;
+        levelConfig.validate();
+
+        SokobanSim sim = new SokobanSim(levelConfig, board);
+        sim.startGame();
+        sim.waitFinish();
+        SokobanResult result = sim.getResult();
+
+        if (result.getResult() != SokobanResultType.VICTORY)
+            failed.incrementAndGet();
+        // An agent still thinking (e.g. building level tables, which does not poll for cancellation) may write its
+        // static state while the next level runs, so that level then gets classes of its own
+        if (!agent.awaitStopped(STOP_WAIT_MILLIS))
+            loaders.remove();
+        synchronized (this) {
+            System.out.printf("level %d: %s in %.1f ms", level, result.getResult(),
+                              (double) result.getSimTimeMillis());
+            if (result.getResult() == SokobanResultType.VICTORY)
+                System.out.printf(" (%d steps)", result.getSteps());
+            if (result.message != null)
+                System.out.printf(" (%s)", result.message);
+            System.out.println();
+            if (resultDir != null)
+                result.outputResult(resultDir.getPath());
+        }
+        return result;
+    }
+
+    // Parses every level of the file in one pass
+    static List<Board> loadBoards(File levelFile, ELevelFormat format, int count) {
+        List<Board> boards = new ArrayList<>(count);
+        switch (format) {
+        case SOK: {
+            SokReader reader = new SokReader(levelFile);
+            for (int i = 0; i < count; ++i)
+                boards.add(Board.fromTextLevel(reader.readNext()));
+            reader.close();
+            break;
+        }
+        case S4JL: {
+            S4JLReader reader = new S4JLReader(levelFile);
+            for (int i = 0; i < count; ++i)
+                boards.add(Board.fromTextLevel(reader.readNext()));
+            reader.close();
+            break;
+        }
+        default:
+            throw new RuntimeException("Unexpected level format: " + levelFile.getAbsolutePath());
+        }
+        for (Board board : boards)
+            board.validate();
+        return boards;
+    }
+
+    /**
+     * Loads classes from the class path itself instead of delegating to its parent first, except for the game API
+     * agents are called through, which has to be shared with the runner.
+     */
+    static class AgentClassLoader extends URLClassLoader {
+        private static final String[] SHARED = {
+            "java.", "javax.", "jdk.", "sun.", "game.", "utils.", "tournament.", "ui."
+        };
+
+        AgentClassLoader() {
+            super(classPath(), BatchSokobanLevels.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            for (String prefix : SHARED)
+                if (name.startsWith(prefix))
+                    return super.loadClass(name, resolve);
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try {
+                        c = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve)
+                    resolveClass(c);
+                return c;
+            }
+        }
+
+        private static URL[] classPath() {
+            String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+            URL[] urls = new URL[entries.length];
+            try {
+                for (int i = 0; i < entries.length; ++i)
+                    urls[i] = new File(entries[i]).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Invalid class path entry.", e);
+            }
+            return urls;
+        }
+    }
+}
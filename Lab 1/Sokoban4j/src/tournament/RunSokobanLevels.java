@@ -77,6 +77,11 @@ public class RunSokobanLevels {
         if (config.requireOptimal)
             args.add("-optimal");
 
+        if (config.solutionDir != null) {
+            args.add("-solutions");
+            args.add(config.solutionDir.getAbsolutePath());
+        }
+
         if (config.timeoutMillis > 0) {
             args.add("-timeout");
             args.add("" + config.timeoutMillis);
@@ -134,6 +139,15 @@ public class RunSokobanLevels {
             throw new Error(e);
         }
 
+        writeSummary(resultDir, start, idOrAgentClass(), levelset, config, maxFail, highest);
+	}
+
+    /**
+     * Appends a row to 'summary.csv' in 'resultDir' for a run over 'levelset' that began at 'start', with the highest
+     * solved level in 'highest' (NULL if none).
+     */
+    static void writeSummary(File resultDir, LocalDateTime start, String id, String levelset, SokobanConfig config,
+                             int maxFail, SokobanResult highest) {
         File summary = new File(resultDir, "summary.csv");
         boolean exists = summary.exists();
         try (PrintWriter writer = new PrintWriter(new FileOutputStream(summary, true))) {
@@ -141,7 +155,7 @@ public class RunSokobanLevels {
                 writer.println(
                     "datetime;id;levelFile;timeout;maxFail;requireOptimal;highestSolved;steps;playTimeMillis");
             writer.printf("%s;%s;%s;%s;%s;%s;",
-                          start, idOrAgentClass(), levelset,
+                          start, id, levelset,
                           config.timeoutMillis, maxFail, config.requireOptimal);
             if (highest != null)
                 writer.printf(
@@ -152,5 +166,5 @@ public class RunSokobanLevels {
         } catch (IOException e) {
             throw new Error(e);
         }
-	}
+    }
 }
@@ -0,0 +1,236 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import game.PlanVerifier;
+import game.actions.EDirection;
+import game.actions.compact.CAction;
+import game.actions.compact.CMove;
+import game.actions.compact.CPush;
+import game.board.compact.BoardCompact;
+
+/**
+ * Solutions of levels kept across runs in 'solutions.csv' of a directory, keyed by a fingerprint of the level.
+ * <p>
+ * The fingerprint is a 128-bit prefix of the SHA-256 of the level's dimensions and initial tiles (walls, goals, boxes
+ * and player), so the same level is found under any file name or level number. Each row holds the fingerprint, the
+ * step count, whether the solution is move-optimal and the solution in run-length encoded LURD notation (lower case
+ * moves, upper case pushes, "3r" for "rrr"). The file is an append-only log: a row replaces an earlier one for the
+ * same level if it is shorter, or as long and optimal.
+ * <p>
+ * Every hit is replayed on the board before it is returned, which takes microseconds and makes a stale or colliding
+ * entry a plain miss. Stores are shared per directory within a JVM ({@link #open(File)}); rows are appended with one
+ * write each, so runs in separate processes may share a directory too.
+ */
+public class SolutionStore {
+
+    public static final String FILENAME = "solutions.csv";
+
+    static final String HEADER = "fingerprint;steps;optimal;solution";
+
+    private static final Map<String, SolutionStore> stores = new ConcurrentHashMap<String, SolutionStore>();
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    public static class Entry {
+        public final int steps;
+        public final boolean optimal;
+        public final String solution;
+
+        Entry(int steps, boolean optimal, String solution) {
+            this.steps = steps;
+            this.optimal = optimal;
+            this.solution = solution;
+        }
+
+        boolean betterThan(Entry other) {
+            return other == null || steps < other.steps || steps == other.steps && optimal && !other.optimal;
+        }
+    }
+
+    /**
+     * Store of 'dir', loaded on first use and shared by all callers in this JVM.
+     */
+    public static SolutionStore open(File dir) {
+        return stores.computeIfAbsent(dir.getAbsolutePath(), path -> new SolutionStore(new File(path)));
+    }
+
+    SolutionStore(File dir) {
+        file = new File(dir, FILENAME);
+        if (!file.exists())
+            return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null || !line.equals(HEADER))
+                throw new RuntimeException("Incompatible solution store: " + file.getAbsolutePath());
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(";");
+                if (fields.length != 4)
+                    continue;
+                Entry entry = new Entry(Integer.parseInt(fields[1]), Boolean.parseBoolean(fields[2]), fields[3]);
+                if (entry.betterThan(entries.get(fields[0])))
+                    entries.put(fields[0], entry);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the solution store: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Fingerprint of the level in its current state.
+     */
+    public static String fingerprint(BoardCompact board) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = new byte[4];
+            update(digest, bytes, board.width());
+            update(digest, bytes, board.height());
+            for (int[] column : board.tiles)
+                for (int tile : column)
+                    update(digest, bytes, tile);
+            byte[] hash = digest.digest();
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < 16; ++i)
+                sb.append(String.format("%02x", hash[i]));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, byte[] bytes, int value) {
+        for (int i = 0; i < 4; ++i)
+            bytes[i] = (byte) (value >>> (24 - 8 * i));
+        digest.update(bytes);
+    }
+
+    public synchronized Entry get(String fingerprint) {
+        return entries.get(fingerprint);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stored plan solving 'board' (and move-optimal if 'requireOptimal'), verified by replaying it; NULL if none.
+     */
+    public List<EDirection> lookup(BoardCompact board, boolean requireOptimal) {
+        Entry entry = get(fingerprint(board));
+        if (entry == null || requireOptimal && !entry.optimal)
+            return null;
+        List<EDirection> plan = fromLurd(entry.solution);
+        return plan != null && plan.size() == entry.steps && solves(board, plan) ? plan : null;
+    }
+
+    /**
+     * Adds 'plan' as the solution of 'board' if it solves it and beats the stored one; returns whether it was added.
+     */
+    public boolean record(BoardCompact board, List<EDirection> plan, boolean optimal) {
+        if (plan == null || !solves(board, plan))
+            return false;
+        String fingerprint = fingerprint(board);
+        Entry entry = new Entry(plan.size(), optimal, toLurd(board, plan));
+        synchronized (this) {
+            if (!entry.betterThan(entries.get(fingerprint)))
+                return false;
+            entries.put(fingerprint, entry);
+            file.getParentFile().mkdirs();
+            boolean header = !file.exists();
+            String row = (header ? HEADER + "\n" : "") +
+                         fingerprint + ";" + entry.steps + ";" + entry.optimal + ";" + entry.solution + "\n";
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(row.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to append to the solution store: " + file.getAbsolutePath(), e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * TRUE if playing 'plan' from 'board' (left untouched) is legal and ends with every box on a goal.
+     */
+    public static boolean solves(BoardCompact board, List<EDirection> plan) {
+        return new PlanVerifier(board).solves(plan);
+    }
+
+    /**
+     * Run-length encoded LURD notation of 'plan' played from 'board'.
+     */
+    public static String toLurd(BoardCompact board, List<EDirection> plan) {
+        BoardCompact state = board.clone();
+        StringBuilder sb = new StringBuilder();
+        char last = 0;
+        int run = 0;
+        for (EDirection dir : plan) {
+            CAction action = action(state, dir);
+            if (action == null)
+                throw new IllegalArgumentException("Illegal step " + dir + " in plan");
+            char c = "urdl".charAt(dir.index);
+            if (action instanceof CPush)
+                c = Character.toUpperCase(c);
+            action.perform(state);
+            if (c != last && run > 0) {
+                appendRun(sb, last, run);
+                run = 0;
+            }
+            last = c;
+            run++;
+        }
+        if (run > 0)
+            appendRun(sb, last, run);
+        return sb.toString();
+    }
+
+    private static void appendRun(StringBuilder sb, char c, int run) {
+        if (run > 1)
+            sb.append(run);
+        sb.append(c);
+    }
+
+    /**
+     * Steps of a run-length encoded LURD solution; NULL if malformed.
+     */
+    public static List<EDirection> fromLurd(String lurd) {
+        List<EDirection> plan = new ArrayList<EDirection>();
+        int count = 0;
+        for (int i = 0; i < lurd.length(); ++i) {
+            char c = lurd.charAt(i);
+            if (Character.isDigit(c)) {
+                count = count * 10 + (c - '0');
+                continue;
+            }
+            int index = "urdl".indexOf(Character.toLowerCase(c));
+            if (index < 0)
+                return null;
+            for (int k = Math.max(count, 1); k > 0; --k)
+                plan.add(EDirection.arrows()[index]);
+            count = 0;
+        }
+        return count == 0 ? plan : null;
+    }
+
+    // Move or push of the player in 'dir', NULL if neither is possible
+    private static CAction action(BoardCompact board, EDirection dir) {
+        CAction push = CPush.getAction(dir);
+        if (push.isPossible(board))
+            return push;
+        CAction move = CMove.getAction(dir);
+        return move.isPossible(board) ? move : null;
+    }
+}